@@ -17,11 +17,56 @@ repositories {
     mavenCentral()
 }
 
+// virtual threads need JDK 21
+java {
+    toolchain {
+        languageVersion.set(JavaLanguageVersion.of(21))
+    }
+}
+
+// JMH benchmarks in src/jmh/java, run with ./gradlew jmh
+sourceSets {
+    create("jmh") {
+        compileClasspath += sourceSets.main.get().output
+        runtimeClasspath += sourceSets.main.get().output
+    }
+}
+
+val jmhImplementation by configurations.getting
+val jmhAnnotationProcessor by configurations.getting
+
 dependencies {
     testImplementation(platform("org.junit:junit-bom:5.10.0"))
     testImplementation("org.junit.jupiter:junit-jupiter")
+    jmhImplementation("org.openjdk.jmh:jmh-core:1.37")
+    jmhAnnotationProcessor("org.openjdk.jmh:jmh-generator-annprocess:1.37")
 }
 
+// long running soak tests only run with ./gradlew soakTest
 tasks.test {
-    useJUnitPlatform()
+    useJUnitPlatform {
+        excludeTags("soak")
+    }
+}
+
+tasks.register<Test>("soakTest") {
+    group = "verification"
+    description = "Runs the long running soak tests."
+    testClassesDirs = sourceSets.test.get().output.classesDirs
+    classpath = sourceSets.test.get().runtimeClasspath
+    useJUnitPlatform {
+        includeTags("soak")
+    }
+}
+
+// Pass JMH options with -PjmhArgs, e.g. ./gradlew jmh -PjmhArgs="VectorClock -f 1 -wi 3 -i 5"
+tasks.register<JavaExec>("jmh") {
+    group = "verification"
+    description = "Runs the JMH benchmarks."
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    args = (project.findProperty("jmhArgs") as String?)?.split(" ")?.filter { it.isNotBlank() } ?: listOf()
+    // the benchmarks write trader state and log files into the working directory
+    workingDir = layout.buildDirectory.dir("jmh").get().asFile
+    doFirst { workingDir.mkdirs() }
 }
\ No newline at end of file
@@ -0,0 +1,85 @@
+package peer;
+
+import org.openjdk.jmh.annotations.*;
+import utils.TraderState;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.rmi.RemoteException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Time from the start of an election at peer 0 until every peer knows the new coordinator, for the ring and
+ * the bully election. Peers live in the same process, every call between them is delayed by a simulated
+ * network hop of {@link #HOP_LATENCY_MICROS}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Dlogger.sink=binary")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ElectionBenchmark {
+
+    private static final long HOP_LATENCY_MICROS = 100;
+
+    @Param({"10", "100", "1000"})
+    public int peersAmt;
+
+    @Param({"ring", "bully"})
+    public String election;
+
+    private APeer[] peers;
+
+    @Setup
+    public void setUp() throws RemoteException {
+        TraderState.resetTraderState();
+        peers = new APeer[peersAmt];
+        IPeer[] remotePeers = new IPeer[peersAmt];
+        for (int i = 0; i < peersAmt; i++) {
+            peers[i] = new Buyer(i, peersAmt);
+            peers[i].bullyElection = election.equals("bully");
+            remotePeers[i] = withHopLatency(peers[i]);
+        }
+        for (APeer peer : peers) {
+            peer.setPeers(remotePeers);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (APeer peer : peers) {
+            peer.executorService.shutdownNow();
+        }
+        TraderState.resetTraderState();
+    }
+
+    @Benchmark
+    public int elect() throws RemoteException {
+        for (APeer peer : peers) {
+            peer.setTraderIDs(new int[] { 0 });
+        }
+        peers[0].startElection();
+
+        int coordinatorID = peersAmt - 1;
+        for (APeer peer : peers) {
+            while (peer.getCoordinatorID() != coordinatorID) {
+                Thread.yield();
+            }
+        }
+        return coordinatorID;
+    }
+
+    // delays every call to the peer by one network hop
+    private static IPeer withHopLatency(IPeer peer) {
+        return (IPeer) Proxy.newProxyInstance(IPeer.class.getClassLoader(), new Class<?>[] { IPeer.class }, (proxy, method, args) -> {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(HOP_LATENCY_MICROS));
+            try {
+                return method.invoke(peer, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        });
+    }
+}
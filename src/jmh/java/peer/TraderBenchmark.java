@@ -0,0 +1,115 @@
+package peer;
+
+import org.openjdk.jmh.annotations.*;
+import product.Product;
+import utils.TraderState;
+import utils.VectorClock;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trips of discover, buy and offer to a trader in the same process, without RMI in between. The client
+ * is both buyer and seller and waits for the acknowledgement of each request before sending the next one.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = "-Dlogger.sink=binary")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TraderBenchmark {
+
+    private static final int CLIENT_ID = 0;
+    private static final int TRADER_ID = 1;
+
+    private APeer trader;
+    private APeer client;
+    private final BlockingQueue<int[]> acks = new SynchronousQueue<>();
+    private int[] timestamp;
+
+    @Setup
+    public void setUp() throws RemoteException {
+        TraderState.resetTraderState();
+        client = new APeer(CLIENT_ID, 2) {
+            @Override
+            public void discoverAck(Product product, int amount, boolean available, int[] traderTimestamp) {
+                acknowledge(traderTimestamp);
+            }
+
+            @Override
+            public void buyAck(Product product, int amount, boolean bought, int[] traderTimestamp, long timeInitiated) {
+                acknowledge(traderTimestamp);
+            }
+
+            @Override
+            public void offerAck(int[] sellerTimestamp) {
+                acknowledge(sellerTimestamp);
+            }
+
+            @Override
+            public void pay(int price, int[] traderTimestamp) {}
+        };
+        trader = new APeer(TRADER_ID, 2) {
+            @Override
+            public void discoverAck(Product product, int amount, boolean available, int[] traderTimestamp) {}
+
+            @Override
+            public void buyAck(Product product, int amount, boolean bought, int[] traderTimestamp, long timeInitiated) {}
+
+            @Override
+            public void offerAck(int[] sellerTimestamp) {}
+
+            @Override
+            public void pay(int price, int[] traderTimestamp) {}
+        };
+        IPeer[] peers = new IPeer[] { client, trader };
+        client.setPeers(peers);
+        trader.setPeers(peers);
+        client.setTraderIDs(new int[] { TRADER_ID });
+        trader.setTraderIDs(new int[] { TRADER_ID });
+        timestamp = new int[2];
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.executorService.shutdownNow();
+        trader.executorService.shutdownNow();
+        TraderState.resetTraderState();
+    }
+
+    @Benchmark
+    public int[] discover() throws RemoteException, InterruptedException {
+        trader.discover(Product.FISH, 1, nextTimestamp(), CLIENT_ID);
+        return awaitAck();
+    }
+
+    @Benchmark
+    public int[] offerAndBuy() throws RemoteException, InterruptedException {
+        trader.offer(Product.FISH, 1, nextTimestamp(), CLIENT_ID);
+        awaitAck();
+        trader.buy(Product.FISH, 1, nextTimestamp(), CLIENT_ID, System.nanoTime());
+        return awaitAck();
+    }
+
+    private int[] nextTimestamp() {
+        timestamp[CLIENT_ID]++;
+        return timestamp.clone();
+    }
+
+    private int[] awaitAck() throws InterruptedException {
+        int[] traderTimestamp = acks.take();
+        timestamp = VectorClock.merge(timestamp, traderTimestamp);
+        return traderTimestamp;
+    }
+
+    private void acknowledge(int[] traderTimestamp) {
+        try {
+            acks.put(traderTimestamp);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package utils;
+
+import org.openjdk.jmh.annotations.*;
+import product.Product;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a log call for the calling thread while other threads log at the same time. Uses the binary sink so
+ * the console does not slow down the writer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Dlogger.sink=binary")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class LoggerBenchmark {
+
+    @Param({"BLOCK", "DROP"})
+    public Logger.OverflowPolicy overflowPolicy;
+
+    @Setup
+    public void setUp() {
+        Logger.setOverflowPolicy(overflowPolicy);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Logger.flush(10000);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void logEventOneThread() {
+        Logger.log(LogEvent.BOUGHT, 0, 1, 3, Product.FISH);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void logEventFourThreads() {
+        Logger.log(LogEvent.BOUGHT, 0, 1, 3, Product.FISH);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void logTextFourThreads() {
+        Logger.log("Peer 0 bought 3 FISH from peer 1.");
+    }
+}
@@ -0,0 +1,67 @@
+package utils;
+
+import org.openjdk.jmh.annotations.*;
+import product.Product;
+import utils.collections.IntArrayDeque;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Offers and buys of several threads on one trader state store. Every thread trades one product, picked round
+ * robin from the first {@code products} products, so with one product all threads wait for the same product
+ * lock and with more products the trades run in parallel. Run with {@code -t <threads>} to change the number of
+ * threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(4)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TraderContentionBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Store {
+
+        // number of products the threads trade
+        @Param({"1", "3"})
+        public int products;
+
+        private TraderStateStore store;
+        private final AtomicInteger nextThread = new AtomicInteger();
+
+        @Setup
+        public void setUp() {
+            TraderState.resetTraderState();
+            store = TraderStateStore.open();
+        }
+
+        @TearDown
+        public void tearDown() {
+            store.close();
+            TraderState.resetTraderState();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+
+        private Product product;
+        private int sellerID;
+        private final IntArrayDeque payouts = new IntArrayDeque();
+
+        @Setup
+        public void setUp(Store store) {
+            sellerID = store.nextThread.getAndIncrement();
+            product = Product.values()[sellerID % store.products];
+        }
+    }
+
+    @Benchmark
+    public boolean offerAndBuy(Store store, Client client) {
+        store.store.putIntoStock(client.product, 2, client.sellerID);
+        client.payouts.clear();
+        return store.store.takeOutOfStock(client.product, 2, client.payouts);
+    }
+}
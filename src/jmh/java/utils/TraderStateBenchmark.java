@@ -0,0 +1,59 @@
+package utils;
+
+import org.openjdk.jmh.annotations.*;
+import product.Product;
+import utils.collections.IntArrayDeque;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TraderStateBenchmark {
+
+    // number of sellers in the queue of each product
+    @Param({"10", "1000"})
+    public int sellers;
+
+    private TraderState traderState;
+    private final IntArrayDeque payouts = new IntArrayDeque();
+
+    @Setup
+    public void setUp() {
+        TraderState.resetTraderState();
+        traderState = TraderState.readTraderState();
+        for (int i = 0; i < sellers; i++) {
+            for (Product product : Product.values()) {
+                traderState.putIntoStock(product, 5, i);
+            }
+        }
+        TraderState.writeTraderState(traderState);
+    }
+
+    @TearDown
+    public void tearDown() {
+        TraderState.resetTraderState();
+    }
+
+    @Benchmark
+    public void writeTraderState() {
+        TraderState.writeTraderState(traderState);
+    }
+
+    @Benchmark
+    public TraderState readTraderState() {
+        return TraderState.readTraderState();
+    }
+
+    // the units taken are the oldest ones, so the queue keeps its size but moves through the sellers
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public boolean putIntoStockAndTakeOutOfStock() {
+        traderState.putIntoStock(Product.FISH, 3, 7);
+        payouts.clear();
+        return traderState.takeOutOfStock(Product.FISH, 3, payouts);
+    }
+}
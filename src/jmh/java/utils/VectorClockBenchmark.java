@@ -0,0 +1,48 @@
+package utils;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class VectorClockBenchmark {
+
+    @Param({"3", "10", "100", "1000"})
+    public int peers;
+
+    private int[] smaller;
+    private int[] larger;
+    private int[] equal;
+
+    @Setup
+    public void setUp() {
+        smaller = new int[peers];
+        larger = new int[peers];
+        for (int i = 0; i < peers; i++) {
+            smaller[i] = i;
+            larger[i] = i;
+        }
+        larger[peers - 1]++;
+        equal = smaller.clone();
+    }
+
+    @Benchmark
+    public int[] merge() {
+        return VectorClock.merge(smaller, larger);
+    }
+
+    @Benchmark
+    public boolean isSmallerThan() {
+        return VectorClock.isSmallerThan(smaller, larger);
+    }
+
+    @Benchmark
+    public boolean isSmallerThanEqual() {
+        return VectorClock.isSmallerThan(smaller, equal);
+    }
+}
@@ -1,11 +1,18 @@
+import peer.APeer;
+import peer.Buyer;
 import peer.IPeer;
+import peer.Seller;
+import transport.Transport;
 import utils.Logger;
 import utils.TraderState;
 
 import java.io.IOException;
-import java.rmi.NotBoundException;
+import java.nio.file.Paths;
+import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
+import java.util.ArrayList;
+import java.util.List;
 
 public class AsterixAndTheTradingPost {
 
@@ -13,28 +20,59 @@ public class AsterixAndTheTradingPost {
     public static String CLASS_PATH = "build/classes/java/main";
     public static String BUYER_CLASS = "peer.Buyer";
     public static String SELLER_CLASS = "peer.Seller";
+    public static String JAVA = Paths.get(System.getProperty("java.home"), "bin", "java").toString(); // same JDK as the launcher
 
-    public static void main(String[] args) throws IOException, InterruptedException, NotBoundException {
+    private static Registry registry; // keeps the registry of a single JVM run reachable
+
+    public static void main(String[] args) throws IOException, InterruptedException {
 
         TraderState.resetTraderState();
 
         int n = Integer.parseInt(args[0]);  // Number of peers
 
-        Registry registry = LocateRegistry.createRegistry(REGISTRY_ID);
+        // --single-jvm hosts all peers in this process, --transport=direct|rmi|nio decides how they call each other
+        boolean singleJvm = false;
+        String transport = null;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--single-jvm")) {
+                singleJvm = true;
+            } else if (args[i].startsWith("--transport=")) {
+                transport = args[i].substring("--transport=".length());
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        if (singleJvm) {
+            startSingleJvm(n, transport == null ? "direct" : transport);
+            Thread.currentThread().join(); // the peers run on daemon threads
+            return;
+        }
+        if (transport == null) {
+            transport = "rmi";
+        } else if (transport.equals("direct")) {
+            throw new IllegalArgumentException("Peer processes cannot use the direct transport.");
+        }
+        if (transport.equals("rmi")) {
+            registry = LocateRegistry.createRegistry(REGISTRY_ID);
+        }
 
         Process[] processes = new Process[n];
 
+        List<String> peerProperties = new ArrayList<>();
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("logger.") || name.startsWith("peer.")) {
+                peerProperties.add("-D" + name + "=" + System.getProperty(name));
+            }
+        }
+
         // initialize all peers
         for (int i = 0; i < n; i++) {
 
-            ProcessBuilder processBuilder = new ProcessBuilder(
-                    "java",
-                    "-cp",
-                    CLASS_PATH,
-                    i % 2 == 0 ? BUYER_CLASS : SELLER_CLASS,
-                    "" + i,
-                    "" + n
-            );
+            List<String> command = new ArrayList<>(List.of(JAVA, "-cp", CLASS_PATH));
+            command.addAll(peerProperties); // peers use the same logger and peer settings as the launcher
+            command.add("-Dtransport=" + transport);
+            command.addAll(List.of(i % 2 == 0 ? BUYER_CLASS : SELLER_CLASS, "" + i, "" + n));
+            ProcessBuilder processBuilder = new ProcessBuilder(command);
             Process process = processBuilder.start();
             var inputStream = process.getInputStream();
             var outputStream = System.out;
@@ -63,9 +101,10 @@ public class AsterixAndTheTradingPost {
         Thread.sleep(1000); // ensure that all peers are bound
 
         // retrieve proxies
+        Transport peerTransport = Transport.create(transport, n);
         IPeer[] peers = new IPeer[n];
         for (int i = 0; i < n; i++) {
-            peers[i] = (IPeer) registry.lookup("" + i);
+            peers[i] = peerTransport.lookup(i);
         }
 
         Logger.log("########## START INITIAL SETUP ##########");
@@ -75,10 +114,39 @@ public class AsterixAndTheTradingPost {
         Logger.log("########### END INITIAL SETUP ###########");
 
         // do initial election
-        peers[0].election(new int[] {});
+        peers[0].startElection();
 
         for (int i = 0; i < n; i++) {
             processes[i].waitFor();
         }
     }
+
+    /**
+     * Hosts all peers in this process. With the direct transport peers call each other's methods directly,
+     * with the rmi transport every call goes through an RMI registry in this process and with the nio
+     * transport through local sockets.
+     * @param n Number of peers.
+     * @param transportName "direct", "rmi" or "nio".
+     */
+    private static void startSingleJvm(int n, String transportName) throws RemoteException {
+        if (transportName.equals("rmi")) {
+            registry = LocateRegistry.createRegistry(REGISTRY_ID);
+        }
+        Transport transport = Transport.create(transportName, n);
+
+        APeer[] peers = new APeer[n];
+        for (int i = 0; i < n; i++) {
+            peers[i] = i % 2 == 0 ? new Buyer(i, n, transport) : new Seller(i, n, transport);
+            transport.bind(i, peers[i]);
+        }
+
+        Logger.log("########## START INITIAL SETUP ##########");
+        for (int i = 0; i < n; i++) {
+            peers[i].start();
+        }
+        Logger.log("########### END INITIAL SETUP ###########");
+
+        // do initial election
+        peers[0].startElection();
+    }
 }
@@ -0,0 +1,155 @@
+package loadgen;
+
+import peer.APeer;
+import peer.IPeer;
+import product.Product;
+import utils.collections.IntArrayDeque;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Simulated buyer or seller of the load generator. A client has at most one operation in flight: a buyer
+ * discovers a product and buys it if it is available, a seller offers a product. The client reports the
+ * response time of each step and tells the generator when it is idle again. With a batch size above one every
+ * step carries that many products in one batched request. With fast buy a buyer buys without discovering first.
+ */
+public class LoadClient extends APeer {
+
+    private static final long serialVersionUID = 1L;
+
+    private final LoadGenerator generator;
+    private final boolean buyer;
+
+    // current operation
+    private long timeInitiated; // intended start of the current step, System.nanoTime()
+    private Product[] products;
+    private int[] amounts;
+
+    public LoadClient(int peerID, int peersAmt, LoadGenerator generator, boolean buyer) throws RemoteException {
+        super(peerID, peersAmt);
+        this.generator = generator;
+        this.buyer = buyer;
+        crashIfCoordinator = false;
+    }
+
+    /**
+     * Starts the next operation of this client.
+     * @param timeInitiated Time the operation was meant to start. Response times are measured from here, so
+     *                      an open-loop run also counts the time a request waited for an idle client.
+     */
+    void issue(long timeInitiated) {
+        this.timeInitiated = timeInitiated;
+        int batch = generator.getBatch();
+        this.products = new Product[batch];
+        this.amounts = new int[batch];
+        for (int i = 0; i < batch; i++) {
+            products[i] = generator.pickProduct();
+            amounts[i] = generator.pickAmount();
+        }
+        IPeer trader = peers[getTraderID(products[0])]; // all products of a batch have the same trader
+        try {
+            if (batch > 1) {
+                if (buyer) {
+                    trader.discoverBatch(products, amounts, tickTimestamp(), peerID);
+                } else {
+                    trader.offerBatch(products, amounts, tickTimestamp(), peerID);
+                }
+            } else if (buyer && generator.isFastBuy()) {
+                trader.buyIfAvailable(products[0], amounts[0], tickTimestamp(), peerID, timeInitiated);
+            } else if (buyer) {
+                trader.discover(products[0], amounts[0], tickTimestamp(), peerID);
+            } else {
+                trader.offer(products[0], amounts[0], tickTimestamp(), peerID);
+            }
+        } catch (RemoteException e) {
+            generator.record(operation(), timeInitiated, false);
+            generator.failed(this);
+        }
+    }
+
+    // first step of the operations of this client
+    private LoadGenerator.Operation operation() {
+        if (!buyer) {
+            return LoadGenerator.Operation.OFFER;
+        }
+        return generator.isFastBuy() ? LoadGenerator.Operation.BUY : LoadGenerator.Operation.DISCOVER;
+    }
+
+    @Override
+    public void discoverAck(Product product, int amount, boolean available, int[] traderTimestamp) throws RemoteException {
+        mergeTimestamp(traderTimestamp);
+        generator.record(LoadGenerator.Operation.DISCOVER, timeInitiated, available);
+        if (!available) {
+            generator.done(this);
+            return;
+        }
+
+        timeInitiated = System.nanoTime();
+        try {
+            peers[getTraderID(product)].buy(product, amount, tickTimestamp(), peerID, timeInitiated);
+        } catch (RemoteException e) {
+            generator.record(LoadGenerator.Operation.BUY, timeInitiated, false);
+            generator.failed(this);
+        }
+    }
+
+    // Buys the available entries of the batch. The batch counts as failed if no entry is available.
+    @Override
+    public void discoverBatchAck(Product[] products, int[] amounts, boolean[] available, int[] traderTimestamp) throws RemoteException {
+        mergeTimestamp(traderTimestamp);
+        List<Product> availableProducts = new ArrayList<>();
+        IntArrayDeque availableAmounts = new IntArrayDeque();
+        for (int i = 0; i < products.length; i++) {
+            if (available[i]) {
+                availableProducts.add(products[i]);
+                availableAmounts.addLast(amounts[i]);
+            }
+        }
+        generator.record(LoadGenerator.Operation.DISCOVER, timeInitiated, !availableProducts.isEmpty());
+        if (availableProducts.isEmpty()) {
+            generator.done(this);
+            return;
+        }
+
+        timeInitiated = System.nanoTime();
+        try {
+            peers[getTraderID(availableProducts.get(0))].buyBatch(availableProducts.toArray(new Product[0]), availableAmounts.toArray(), tickTimestamp(), peerID, timeInitiated);
+        } catch (RemoteException e) {
+            generator.record(LoadGenerator.Operation.BUY, timeInitiated, false);
+            generator.failed(this);
+        }
+    }
+
+    @Override
+    public void buyAck(Product product, int amount, boolean bought, int[] traderTimestamp, long timeInitiated) throws RemoteException {
+        mergeTimestamp(traderTimestamp);
+        generator.record(LoadGenerator.Operation.BUY, timeInitiated, bought);
+        generator.done(this);
+    }
+
+    // The batch counts as failed if no entry was bought.
+    @Override
+    public void buyBatchAck(Product[] products, int[] amounts, boolean[] bought, int[] traderTimestamp, long timeInitiated) throws RemoteException {
+        mergeTimestamp(traderTimestamp);
+        boolean anyBought = false;
+        for (boolean b : bought) {
+            anyBought |= b;
+        }
+        generator.record(LoadGenerator.Operation.BUY, timeInitiated, anyBought);
+        generator.done(this);
+    }
+
+    @Override
+    public void offerAck(int[] traderTimestamp) throws RemoteException {
+        mergeTimestamp(traderTimestamp);
+        generator.record(LoadGenerator.Operation.OFFER, timeInitiated, true);
+        generator.done(this);
+    }
+
+    @Override
+    public void pay(int price, int[] traderTimestamp) throws RemoteException {
+        mergeTimestamp(traderTimestamp);
+    }
+}
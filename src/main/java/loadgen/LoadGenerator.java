@@ -0,0 +1,374 @@
+package loadgen;
+
+import peer.APeer;
+import peer.IPeer;
+import product.Product;
+import transport.Transport;
+import utils.LatencyHistogram;
+import utils.PeerExecutors;
+import utils.TraderState;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a trader with simulated buyers and sellers and reports throughput and response time percentiles per
+ * operation at the end of the run.
+ * <p>
+ * Without a rate the load is closed loop: every client starts its next operation as soon as the previous one
+ * is acknowledged, so the concurrency is the number of clients. With a rate the load is open loop: operations
+ * are started at the given rate by the next idle client, and operations that find no idle client are counted
+ * as missed.
+ * <p>
+ * Usage: {@code java loadgen.LoadGenerator [--buyers=4] [--sellers=4] [--rate=<ops/s>] [--duration=<s>]
+ * [--products=FISH:1,SALT:1,BOARS:1] [--amount=1-5] [--batch=1] [--fast-buy=false]
+ * [--target=local|rmi|nio] [--traders=1]}
+ * <p>
+ * The local target runs the trader in this process. The rmi and nio targets start a trader process and bind
+ * the clients with that transport, so every request goes through RMI or the binary NIO protocol. With several
+ * traders the products are partitioned across them and every client sends each request to the trader of its
+ * product.
+ * <p>
+ * With a batch size above one every request carries that many products and is sent with the batched trader
+ * methods. Response times and counts are then per batch. With fast buy the buyers skip the discover and buy
+ * with {@link IPeer#buyIfAvailable}.
+ */
+public class LoadGenerator {
+
+    // the trader process runs on the same JDK as the generator
+    private static final String JAVA = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+
+    enum Operation { DISCOVER, BUY, OFFER }
+
+    /**
+     * Response times and failures of one operation type.
+     */
+    static class OperationStats {
+        final LatencyHistogram responseTimes = new LatencyHistogram(); // us
+        final LongAdder failed = new LongAdder();
+    }
+
+    /**
+     * Settings of a run.
+     */
+    static class Options {
+        int buyers = 4;
+        int sellers = 4;
+        int rate = 0; // ops/s, 0 for closed loop
+        int duration = 10; // s
+        Map<Product, Integer> productWeights = new EnumMap<>(Product.class);
+        int minAmount = 1;
+        int maxAmount = 5;
+        int batch = 1;
+        boolean fastBuy = false;
+        String target = "local";
+        int traders = 1;
+
+        Options() {
+            for (Product product : Product.values()) {
+                productWeights.put(product, 1);
+            }
+        }
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (String arg : args) {
+                String[] keyValue = arg.replaceFirst("^--", "").split("=", 2);
+                if (keyValue.length != 2) {
+                    throw new IllegalArgumentException("Expected --key=value but got " + arg);
+                }
+                String value = keyValue[1];
+                switch (keyValue[0]) {
+                    case "buyers" -> options.buyers = Integer.parseInt(value);
+                    case "sellers" -> options.sellers = Integer.parseInt(value);
+                    case "rate" -> options.rate = Integer.parseInt(value);
+                    case "duration" -> options.duration = Integer.parseInt(value);
+                    case "products" -> {
+                        options.productWeights.clear();
+                        for (String entry : value.split(",")) {
+                            String[] productWeight = entry.split(":");
+                            int weight = productWeight.length > 1 ? Integer.parseInt(productWeight[1]) : 1;
+                            options.productWeights.put(Product.valueOf(productWeight[0].toUpperCase()), weight);
+                        }
+                    }
+                    case "amount" -> {
+                        String[] range = value.split("-");
+                        options.minAmount = Integer.parseInt(range[0]);
+                        options.maxAmount = Integer.parseInt(range[range.length - 1]);
+                    }
+                    case "batch" -> options.batch = Integer.parseInt(value);
+                    case "fast-buy" -> options.fastBuy = Boolean.parseBoolean(value);
+                    case "target" -> {
+                        if (!List.of("local", "rmi", "nio").contains(value)) {
+                            throw new IllegalArgumentException("Unknown target: " + value);
+                        }
+                        options.target = value;
+                    }
+                    case "traders" -> options.traders = Integer.parseInt(value);
+                    default -> throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            }
+            if (options.buyers + options.sellers == 0 || options.productWeights.isEmpty()) {
+                throw new IllegalArgumentException("Need at least one client and one product.");
+            }
+            if (options.batch < 1) {
+                throw new IllegalArgumentException("Batch size must be at least 1.");
+            }
+            if (options.fastBuy && options.batch > 1) {
+                throw new IllegalArgumentException("Fast buy cannot be combined with batches.");
+            }
+            if (options.traders < 1 || options.traders > Product.values().length) {
+                throw new IllegalArgumentException("Traders must be between 1 and the number of products.");
+            }
+            if (options.traders > 1 && options.batch > 1) {
+                throw new IllegalArgumentException("Batches cannot be split across traders.");
+            }
+            return options;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Options options = Options.parse(args);
+        LoadGenerator generator = new LoadGenerator(options);
+        Map<Operation, OperationStats> stats = generator.run();
+        System.out.print(report(stats, options.duration, generator.getMissed()));
+        System.exit(0);
+    }
+
+    private final Options options;
+    private final Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+    private final ConcurrentLinkedQueue<LoadClient> idleClients = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder missed = new LongAdder();
+    private final Product[] products;
+    private final int[] cumulativeWeights;
+    private volatile boolean running;
+
+    LoadGenerator(Options options) {
+        this.options = options;
+        for (Operation operation : Operation.values()) {
+            stats.put(operation, new OperationStats());
+        }
+
+        products = options.productWeights.keySet().toArray(new Product[0]);
+        cumulativeWeights = new int[products.length];
+        int total = 0;
+        for (int i = 0; i < products.length; i++) {
+            total += options.productWeights.get(products[i]);
+            cumulativeWeights[i] = total;
+        }
+    }
+
+    /**
+     * Sets up the traders and the clients, generates load for the configured duration and waits for the
+     * operations still in flight.
+     * @return Statistics per operation.
+     */
+    Map<Operation, OperationStats> run() throws IOException, InterruptedException {
+        TraderState.resetTraderState();
+
+        int peersAmt = options.buyers + options.sellers + options.traders;
+        int firstTraderID = peersAmt - options.traders; // highest IDs, so they would also win an election
+        int[] traderIDs = new int[options.traders]; // routing table, the coordinator first
+        for (int i = 0; i < traderIDs.length; i++) {
+            traderIDs[i] = peersAmt - 1 - i;
+        }
+        List<LoadClient> clients = new ArrayList<>();
+        for (int i = 0; i < firstTraderID; i++) {
+            LoadClient client = new LoadClient(i, peersAmt, this, i < options.buyers);
+            client.setTraderIDs(traderIDs);
+            clients.add(client);
+        }
+
+        IPeer[] peers = new IPeer[peersAmt];
+        peers = clients.toArray(peers);
+        List<Process> traderProcesses = new ArrayList<>();
+        if (!options.target.equals("local")) {
+            if (options.target.equals("rmi")) {
+                LocateRegistry.createRegistry(APeer.REGISTRY_ID);
+            }
+            Transport transport = Transport.create(options.target, peersAmt);
+            for (LoadClient client : clients) {
+                transport.bind(client.peerID, client);
+            }
+            for (int traderID : traderIDs) {
+                traderProcesses.add(startTraderProcess(traderID, peersAmt, options.target));
+            }
+            for (int traderID : traderIDs) {
+                peers[traderID] = awaitPeer(transport, traderID);
+                peers[traderID].start();
+            }
+            peers[traderIDs[0]].coordinator(0, traderIDs, traderIDs); // forwarded to the other traders
+            Thread.sleep(1000); // the coordinator message is handled asynchronously
+        } else {
+            for (int traderID : traderIDs) {
+                Trader trader = new Trader(traderID, peersAmt);
+                trader.setTraderIDs(traderIDs);
+                trader.setPeers(peers);
+                peers[traderID] = trader;
+            }
+        }
+        for (LoadClient client : clients) {
+            client.setPeers(peers);
+        }
+
+        running = true;
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(options.duration);
+        if (options.rate > 0) {
+            idleClients.addAll(clients);
+            long interval = TimeUnit.SECONDS.toNanos(1) / options.rate;
+            for (long next = start; next < end; next += interval) {
+                LockSupport.parkNanos(next - System.nanoTime());
+                LoadClient client = idleClients.poll();
+                if (client == null) {
+                    missed.increment();
+                } else {
+                    inFlight.incrementAndGet();
+                    client.issue(next);
+                }
+            }
+        } else {
+            for (LoadClient client : clients) {
+                inFlight.incrementAndGet();
+                client.issue(System.nanoTime());
+            }
+            LockSupport.parkNanos(end - System.nanoTime());
+        }
+        running = false;
+
+        // wait for the operations in flight
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        for (Process traderProcess : traderProcesses) {
+            traderProcess.destroy();
+        }
+        return stats;
+    }
+
+    /**
+     * Records the response time of a finished operation.
+     * @param operation Type of the operation.
+     * @param timeInitiated Start of the operation, System.nanoTime().
+     * @param succeeded False if the product was unavailable, the buy failed or the trader did not respond.
+     */
+    void record(Operation operation, long timeInitiated, boolean succeeded) {
+        OperationStats operationStats = stats.get(operation);
+        operationStats.responseTimes.record((System.nanoTime() - timeInitiated) / 1000);
+        if (!succeeded) {
+            operationStats.failed.increment();
+        }
+    }
+
+    /**
+     * Called by a client when its operation is finished.
+     */
+    void done(LoadClient client) {
+        if (running && options.rate == 0) {
+            client.issue(System.nanoTime());
+            return;
+        }
+        inFlight.decrementAndGet();
+        if (running) {
+            idleClients.add(client);
+        }
+    }
+
+    /**
+     * Called by a client when the trader did not respond. The client goes on after a pause, so a closed loop
+     * does not spin while the trader is down.
+     */
+    void failed(LoadClient client) {
+        PeerExecutors.schedule(() -> done(client), 10, TimeUnit.MILLISECONDS);
+    }
+
+    Product pickProduct() {
+        int value = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < products.length; i++) {
+            if (value < cumulativeWeights[i]) {
+                return products[i];
+            }
+        }
+        return products[products.length - 1];
+    }
+
+    int pickAmount() {
+        return ThreadLocalRandom.current().nextInt(options.minAmount, options.maxAmount + 1);
+    }
+
+    int getBatch() {
+        return options.batch;
+    }
+
+    boolean isFastBuy() {
+        return options.fastBuy;
+    }
+
+    long getMissed() {
+        return missed.sum();
+    }
+
+    static String report(Map<Operation, OperationStats> stats, int duration, long missed) {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-9s %9s %9s %10s %9s %9s %9s %9s %9s%n",
+                "operation", "count", "failed", "ops/s", "p50[us]", "p90[us]", "p99[us]", "p99.9[us]", "max[us]"));
+        for (Map.Entry<Operation, OperationStats> entry : stats.entrySet()) {
+            LatencyHistogram.Snapshot snapshot = entry.getValue().responseTimes.snapshot();
+            report.append(String.format("%-9s %9d %9d %10.1f %9d %9d %9d %9d %9d%n",
+                    entry.getKey(),
+                    snapshot.getTotalCount(),
+                    entry.getValue().failed.sum(),
+                    (double) snapshot.getTotalCount() / duration,
+                    snapshot.getValueAtPercentile(50),
+                    snapshot.getValueAtPercentile(90),
+                    snapshot.getValueAtPercentile(99),
+                    snapshot.getValueAtPercentile(99.9),
+                    snapshot.getMaxValue()));
+        }
+        if (missed > 0) {
+            report.append(missed).append(" operation(s) missed because no client was idle.").append(System.lineSeparator());
+        }
+        return report.toString();
+    }
+
+    private static Process startTraderProcess(int traderID, int peersAmt, String transport) throws IOException {
+        List<String> command = new ArrayList<>(List.of(JAVA, "-cp", System.getProperty("java.class.path")));
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("logger.") || name.startsWith("peer.")) {
+                command.add("-D" + name + "=" + System.getProperty(name));
+            }
+        }
+        command.add("-Dtransport=" + transport);
+        command.addAll(List.of(Trader.class.getName(), "" + traderID, "" + peersAmt));
+        Process process = new ProcessBuilder(command).inheritIO().start();
+        Runtime.getRuntime().addShutdownHook(new Thread(process::destroy));
+        return process;
+    }
+
+    private static IPeer awaitPeer(Transport transport, int peerID) throws InterruptedException, RemoteException {
+        for (int i = 0; i < 100; i++) {
+            try {
+                IPeer peer = transport.lookup(peerID);
+                peer.getPeerID(); // fails until the peer is bound
+                return peer;
+            } catch (RemoteException e) {
+                Thread.sleep(100);
+            }
+        }
+        return transport.lookup(peerID);
+    }
+}
@@ -0,0 +1,53 @@
+package loadgen;
+
+import peer.APeer;
+import product.Product;
+import transport.RmiTransport;
+import transport.Transport;
+
+import java.rmi.RemoteException;
+
+/**
+ * Peer that only acts as trader for the load generator. It never crashes and ignores acknowledgements.
+ */
+public class Trader extends APeer {
+
+    private static final long serialVersionUID = 1L;
+
+    public static void main(String[] args) throws RemoteException {
+        int peerID = Integer.parseInt(args[0]);
+        int peersAmt = Integer.parseInt(args[1]);
+
+        Transport transport = Transport.create(System.getProperty("transport", "rmi"), peersAmt);
+        transport.bind(peerID, new Trader(peerID, peersAmt, transport));
+    }
+
+    public Trader(int peerID, int peersAmt) throws RemoteException {
+        this(peerID, peersAmt, new RmiTransport());
+    }
+
+    public Trader(int peerID, int peersAmt, Transport transport) throws RemoteException {
+        super(peerID, peersAmt, transport);
+        crashIfCoordinator = false;
+    }
+
+    @Override
+    public void discoverAck(Product product, int amount, boolean available, int[] traderTimestamp) throws RemoteException {
+        // Do nothing. This peer is the trader.
+    }
+
+    @Override
+    public void buyAck(Product product, int amount, boolean bought, int[] traderTimestamp, long timeInitiated) throws RemoteException {
+        // Do nothing. This peer is the trader.
+    }
+
+    @Override
+    public void offerAck(int[] sellerTimestamp) throws RemoteException {
+        // Do nothing. This peer is the trader.
+    }
+
+    @Override
+    public void pay(int price, int[] traderTimestamp) throws RemoteException {
+        // Do nothing. This peer is the trader.
+    }
+}
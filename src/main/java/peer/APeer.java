@@ -1,40 +1,133 @@
 package peer;
 
 import product.Product;
+import transport.RmiTransport;
+import transport.Transport;
+import utils.FailureDetector;
+import utils.LogEvent;
 import utils.Logger;
-import utils.Messages;
-import utils.TraderState;
+import utils.PeerExecutors;
+import utils.ReplicationLog;
+import utils.Sequencer;
+import utils.SettlementLedger;
+import utils.TraderReplica;
+import utils.TraderStateStore;
 import utils.VectorClock;
+import utils.collections.IntArrayDeque;
 
-import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 public abstract class APeer extends UnicastRemoteObject implements IPeer {
 
-    public static final int REGISTRY_ID = 1099;
+    private static final long serialVersionUID = 1L;
+
+    public static final int REGISTRY_ID = RmiTransport.REGISTRY_ID;
     public static final int CRASH_PERIOD = 10000;
+    public static final int SETTLEMENT_PERIOD = Integer.getInteger("peer.settlementPeriod", 100); // ms
+    public static final boolean SEQUENCER = Boolean.getBoolean("peer.sequencer"); // apply trades on one thread
+    public static final int SEQUENCER_CAPACITY = 1024;
+    public static final int ELECTION_TIMEOUT = Integer.getInteger("peer.electionTimeout", 5000); // ms
+    public static final int HEARTBEAT_PERIOD = Integer.getInteger("peer.heartbeatPeriod", 500); // ms, 0 turns heartbeats off
+    public static final int HEARTBEAT_TIMEOUT = Integer.getInteger("peer.heartbeatTimeout", 3 * HEARTBEAT_PERIOD); // ms
+    public static final int STANDBYS = Integer.getInteger("peer.standbys", 0); // 0 turns replication off
+    public static final boolean BULLY = "bully".equals(System.getProperty("peer.election", "ring")); // ring or bully
+    public static final int TRADERS = Integer.getInteger("peer.traders", 1); // traders the products are partitioned across
+    public static final int BATCH_WINDOW = Integer.getInteger("peer.batchWindow", 0); // ms, 0 sends every request on its own
+
+    private static final AtomicReferenceFieldUpdater<APeer, int[]> TIMESTAMP =
+            AtomicReferenceFieldUpdater.newUpdater(APeer.class, int[].class, "timestamp");
 
     public final int peerID;
     public IPeer[] peers;
-    public volatile int coordinatorID;
-    public int[] timestamp;
+    // vector clock of this peer. Replaced on every update and never changed in place, so it can be read and sent
+    // without a lock. Updated with a compare-and-set, see mergeTimestamp.
+    public volatile int[] timestamp;
 
     // crash functionality
     public boolean crashIfCoordinator;
     public boolean crashed;
 
+    // apply trades in order on one sequencer thread instead of the thread pool
+    public boolean sequencerMode;
+
+    // elect the coordinator by probing all higher peers at once instead of passing the election around the ring
+    public boolean bullyElection;
+
+    // number of traders the elections started by this peer choose
+    public int traders;
+    // number of standby peers this peer replicates the trader state to while it trades, 0 for none
+    public int standbys;
+    // ms buyers and sellers collect their requests for before sending them as one batch, 0 for none
+    public int batchWindow;
+
     protected ExecutorService executorService;
 
+    // how this peer reaches the other peers
+    protected final Transport transport;
+
+    // trader of each product partition, chosen by the last election. Partition 0 is traded by the coordinator,
+    // so peers set up with a single trader trade all products there. Replaced, never changed in place.
+    private volatile int[] traderIDs = new int[1];
+    // in-memory trader state of each partition, only held while this peer trades it. Guarded by traderLock.
+    private final TraderStateStore[] traderStateStores = new TraderStateStore[Product.values().length];
+    // partitions this peer was elected to trade but must not open before every other peer has released them.
+    // Guarded by traderLock.
+    private final boolean[] awaitingRelease = new boolean[Product.values().length];
+    // trades hold the read lock and run in parallel, the store locks each product on its own. Taking over or
+    // handing over the trader state holds the write lock. In sequencer mode the sequencer thread owns the trader
+    // state instead and no lock is taken, so "holding the trader lock" means running on the sequencer thread.
+    private final ReentrantReadWriteLock traderLock = new ReentrantReadWriteLock();
+    // signalled when the partitions awaiting their release are opened
+    private final Condition partitionsAcquired = traderLock.writeLock().newCondition();
+    // applies the trades in sequencer mode
+    private volatile Sequencer<TradeRequest> sequencer;
+    // trades that arrived in sequencer mode while partitions awaited their release, applied again once they are
+    // opened. Only used by the sequencer thread.
+    private final ArrayDeque<TradeRequest> deferredTrades = new ArrayDeque<>();
+    // money owed to the sellers, paid outside the lock every SETTLEMENT_PERIOD ms
+    private final SettlementLedger settlementLedger = new SettlementLedger();
+    // credits the sellers of the units taken out of stock, one instance for all trades
+    private final TraderStateStore.PayoutListener sellerCredit = this::creditSeller;
+    // epoch of the current election, suppresses concurrent and stale elections
+    private final ElectionState electionState = new ElectionState(ELECTION_TIMEOUT);
+    // notice a crashed trader by its missing heartbeats, one per partition traded by another peer
+    private volatile FailureDetector[] failureDetectors = new FailureDetector[0];
+    // set while this peer has been elected trader and sends heartbeats
+    private volatile boolean sendingHeartbeats;
+
+    // standby peers of this coordinator and whether each holds the current trader state, -1 for an empty slot.
+    // Guarded by replicationLock, which is always taken before the trader lock.
+    private int[] standbyIDs = new int[0];
+    private boolean[] standbySynced = new boolean[0];
+    private final ReentrantLock replicationLock = new ReentrantLock();
+    // set when this peer becomes coordinator, the next replication picks new standby peers
+    private volatile boolean chooseStandbys;
+    // warm copy of the trader state while this peer is a standby. Guarded by replicaLock.
+    private TraderReplica replica;
+    private final Object replicaLock = new Object();
+
     public APeer(int peerID, int peersAmt) throws RemoteException {
+        this(peerID, peersAmt, new RmiTransport());
+    }
+
+    public APeer(int peerID, int peersAmt, Transport transport) throws RemoteException {
         super();
         this.peerID = peerID;
+        this.transport = transport;
 
         this.timestamp = new int[peersAmt];
         Arrays.fill(timestamp, 0);
@@ -43,8 +136,13 @@ public abstract class APeer extends UnicastRemoteObject implements IPeer {
 
         crashIfCoordinator = true;
         crashed = false;
+        sequencerMode = SEQUENCER;
+        bullyElection = BULLY;
+        traders = TRADERS;
+        standbys = STANDBYS;
+        batchWindow = BATCH_WINDOW;
 
-        executorService = Executors.newFixedThreadPool(10);
+        executorService = PeerExecutors.newExecutor("peer-" + peerID);
     }
 
     @Override
@@ -53,12 +151,26 @@ public abstract class APeer extends UnicastRemoteObject implements IPeer {
             int period = new Random().nextInt(CRASH_PERIOD/2, CRASH_PERIOD);
 
             // simulate periodic crash and recovery functionality
-            ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
-            executor.scheduleAtFixedRate(() -> {
+            PeerExecutors.scheduleAtFixedRate(() -> {
                 crashed = !crashed;
-                if (!crashed) {
+                if (crashed) {
+                    // stop trading, hand the final state over to the standby peers, persist trader state and pay
+                    // the sellers so the next coordinator can take over
+                    ReplicationLog.Batch handover = withTraderState(true, () -> {
+                        ReplicationLog.Batch snapshot = null;
+                        if (traderIDs.length == 1 && traderStateStores[0] != null) {
+                            snapshot = traderStateStores[0].snapshot();
+                        }
+                        releaseTraderStateStores(true);
+                        return snapshot;
+                    });
+                    if (handover != null) {
+                        handOverToStandbys(handover);
+                    }
+                    settlePayments();
+                } else {
                     try {
-                        election(new int[] {});
+                        startElection();
                     } catch (RemoteException e) {
                         throw new RuntimeException(e);
                     }
@@ -66,14 +178,13 @@ public abstract class APeer extends UnicastRemoteObject implements IPeer {
             }, this.peers.length * 200L + period, period, TimeUnit.MILLISECONDS);
         }
 
-        // get all other peers from the registry
-        Registry registry = LocateRegistry.getRegistry("127.0.0.1", REGISTRY_ID);
+        // get all other peers from the transport
         for (int i = 0; i < this.peers.length; i++) {
-            try {
-                peers[i] = (IPeer) registry.lookup("" + i);
-            } catch (NotBoundException e) {
-                throw new RuntimeException(e);
-            }
+            peers[i] = transport.lookup(i);
+        }
+
+        if (HEARTBEAT_PERIOD > 0) {
+            PeerExecutors.scheduleAtFixedRate(this::checkCoordinator, HEARTBEAT_PERIOD, HEARTBEAT_PERIOD, TimeUnit.MILLISECONDS);
         }
     }
 
@@ -83,35 +194,56 @@ public abstract class APeer extends UnicastRemoteObject implements IPeer {
     }
 
     @Override
-    public final void election(int[] tags) throws RemoteException {
+    public final void configureLogging(String key, String value) throws RemoteException {
+        Logger.configure(key, value);
+    }
+
+    @Override
+    public final void startElection() throws RemoteException {
+        // simulate crash
+        simulateCrash();
+
+        int epoch = electionState.start(peerID, System.currentTimeMillis());
+        if (epoch == -1) { // join the election in progress instead
+            Logger.log(LogEvent.ELECTION_DISCARDED, peerID, electionState.getEpoch());
+            return;
+        }
+
+        // add job to thread pool
+        if (bullyElection) {
+            executorService.submit(() -> runBullyElection(epoch));
+        } else {
+            executorService.submit(() -> forwardElection(epoch, new int[] {}));
+        }
+    }
+
+    @Override
+    public final void election(int epoch, int[] tags) throws RemoteException {
         // simulate crash
         simulateCrash();
 
+        // drop messages of older elections and of concurrent elections started by a lower peer
+        if (!electionState.accept(epoch, tags[0], System.currentTimeMillis())) {
+            Logger.log(LogEvent.ELECTION_DISCARDED, peerID, epoch);
+            correctStaleInitiator(epoch, tags[0]);
+            return;
+        }
+
         // add job to thread pool
         executorService.submit(() -> {
             try {
                 // check if election has reached every peer
                 for (int tag : tags) {
                     if (tag == peerID) { // election has reached every peer
-                        int max = Arrays.stream(tags).max().getAsInt(); // find max peer
-                        Logger.log(Messages.getElectionDoneMessage(max));
-                        coordinator(max, tags);
+                        int[] traderIDs = TraderRouting.chooseTraders(tags, traders); // max peer is coordinator
+                        Logger.log(LogEvent.ELECTION_DONE, traderIDs[0]);
+                        coordinator(epoch, traderIDs, tags);
                         return;
                     }
                 }
 
-                // election has not reached every peer, forward election to next peer that is alive.
-                int[] newTags = getNewTags(tags);
-                Logger.log(Messages.getPeerDoingElectionMessage(peerID, newTags));
-                for (int i = 1; i <= peers.length; i++) {
-                    int nextPeer = (i + peerID) % peers.length;
-                    try { // check if next peer is alive, else try next peer.
-                        peers[nextPeer].election(newTags);
-                        break;
-                    } catch (Exception e) {
-                        Logger.log(Messages.getPeerDoesNotRespondMessage(nextPeer));
-                    }
-                }
+                // election has not reached every peer
+                forwardElection(epoch, tags);
             } catch (RemoteException e) {
                 throw new RuntimeException(e);
             }
@@ -119,7 +251,7 @@ public abstract class APeer extends UnicastRemoteObject implements IPeer {
     }
 
     @Override
-    public final void coordinator(int coordinatorID, int[] tags) throws RemoteException {
+    public final void coordinator(int epoch, int[] traderIDs, int[] tags) throws RemoteException {
         // simulate crash
         simulateCrash();
 
@@ -127,11 +259,15 @@ public abstract class APeer extends UnicastRemoteObject implements IPeer {
         executorService.submit(() -> {
             // forward coordinator message to next peer in the tags array.
             try {
-                Logger.log(Messages.getPeerUpdatesCoordinatorMessage(this.peerID, coordinatorID));
-                this.coordinatorID = coordinatorID; // update coordinator
+                if (!updateTraders(epoch, traderIDs)) { // a newer election is already running or done
+                    if (tags.length > 0) {
+                        correctStaleInitiator(epoch, tags[0]);
+                    }
+                    return;
+                }
                 int tagIndex = getPeerTagIndex(tags);
                 if (tagIndex != -1 && tagIndex < tags.length-1) {
-                    peers[tags[tagIndex + 1]].coordinator(coordinatorID, tags); // forward message
+                    peers[tags[tagIndex + 1]].coordinator(epoch, traderIDs, tags); // forward message
                 }
             } catch (RemoteException e) {
                 throw new RuntimeException(e);
@@ -139,47 +275,62 @@ public abstract class APeer extends UnicastRemoteObject implements IPeer {
         });
     }
 
-    // checks if the product and amount is available at the trader.
     @Override
-    public final void discover(Product product, int amount, int[] buyerTimestamp, int buyerID) throws RemoteException {
+    public final boolean release(int epoch, int[] traderIDs) throws RemoteException {
         // simulate crash
         simulateCrash();
 
-        if (this.peerID != this.coordinatorID) {
-            throw new RemoteException();
-        }
+        return updateTraders(epoch, traderIDs);
+    }
 
-        // add job to thread pool
-        executorService.submit(() -> {
-            try {
-                boolean available;
+    @Override
+    public final void ping() throws RemoteException {
+        // simulate crash
+        simulateCrash();
+    }
 
-                synchronized (this) {
-                    // method
-                    if (this.peerID != this.coordinatorID) {
-                        return;
-                    }
+    @Override
+    public final boolean replicate(int primaryID, boolean reset, long sequence, Product[] products, int[] amounts, int[] sellerIDs) throws RemoteException {
+        // simulate crash
+        simulateCrash();
 
-                    // check if product available
-                    TraderState traderState = TraderState.readTraderState();
-                    available = traderState.productAvailable(product, amount);
-                    if (available) {
-                        Logger.log(Messages.getProductAvailableMessage(amount, product, buyerID));
-                    } else {
-                        Logger.log(Messages.getProductUnavailableMessage(amount, product, buyerID));
-                    }
+        synchronized (replicaLock) {
+            if (reset) {
+                replica = new TraderReplica(primaryID);
+            } else if (replica == null || replica.getPrimaryID() != primaryID) {
+                return false;
+            }
+            return replica.apply(reset, sequence, products, amounts, sellerIDs);
+        }
+    }
 
-                    // update timestamp
-                    this.timestamp[this.peerID] += 1;
-                    this.timestamp = VectorClock.merge(this.timestamp, buyerTimestamp);
-                }
+    @Override
+    public final void heartbeat(int traderID) throws RemoteException {
+        // simulate crash
+        simulateCrash();
 
-                // send acknowledgement
-                peers[buyerID].discoverAck(product, amount, available, this.timestamp);
-            } catch (RemoteException e) {
-                throw new RuntimeException(e);
+        int[] traderIDs = this.traderIDs;
+        FailureDetector[] failureDetectors = this.failureDetectors;
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < failureDetectors.length && i < traderIDs.length; i++) {
+            if (failureDetectors[i] != null && traderIDs[i] == traderID) {
+                failureDetectors[i].heartbeat(now);
             }
-        });
+        }
+    }
+
+    // checks if the product and amount is available at the trader.
+    @Override
+    public final void discover(Product product, int amount, int[] buyerTimestamp, int buyerID) throws RemoteException {
+        // simulate crash
+        simulateCrash();
+
+        if (getTraderID(product) != this.peerID) {
+            throw new RemoteException();
+        }
+
+        // apply on the thread pool or the sequencer
+        submitTrade(request -> request.set(TradeRequest.Type.DISCOVER, product, amount, buyerTimestamp, buyerID, 0));
     }
 
     // buy the product from the trader
@@ -188,46 +339,27 @@ public abstract class APeer extends UnicastRemoteObject implements IPeer {
         // simulate crash
         simulateCrash();
 
-        if (this.peerID != this.coordinatorID) {
+        if (getTraderID(product) != this.peerID) {
             throw new RemoteException();
         }
 
-        // add job to thread pool
-        executorService.submit(() -> {
-            try {
-                boolean bought = false;
-                synchronized (this) {
-                    if (this.peerID != this.coordinatorID) {
-                        return;
-                    }
-
-                    TraderState traderState = TraderState.readTraderState();
-                    // check that timestamp of buyer is valid and that product is available
-                    if (VectorClock.isSmallerThan(this.timestamp, buyerTimestamp) && traderState.productAvailable(product, amount)) {
+        // apply on the thread pool or the sequencer
+        submitTrade(request -> request.set(TradeRequest.Type.BUY, product, amount, buyerTimestamp, buyerID, timeInitiated));
+    }
 
-                        // update timestamp
-                        this.timestamp[this.peerID] += 1;
-                        this.timestamp = VectorClock.merge(this.timestamp, buyerTimestamp);
+    // called when buyer wants to buy product without discovering it first. There is no discover the buyer could
+    // have ordered itself after, so the clocks are merged like for a discover instead of checking the buyer clock.
+    @Override
+    public final void buyIfAvailable(Product product, int amount, int[] buyerTimestamp, int buyerID, long timeInitiated) throws RemoteException {
+        // simulate crash
+        simulateCrash();
 
-                        bought = true;
+        if (getTraderID(product) != this.peerID) {
+            throw new RemoteException();
+        }
 
-                        // take out of stock and pay sellers
-                        List<Integer> sellers = traderState.takeOutOfStock(product, amount);
-                        TraderState.writeTraderState(traderState);
-                        Logger.log(Messages.getBoughtMessage(amount, product, this.peerID, buyerID));
-                        for (Integer sellerID : sellers) {
-                            peers[sellerID].pay(product.getPrice(), this.timestamp); // pay sellers
-                        }
-                    } else { // timestamp of this peer is greater or concurrent.
-                        Logger.log(Messages.getBuyFailedMessage(buyerID, this.peerID));
-                    }
-                }
-                // send acknowledgement
-                peers[buyerID].buyAck(product, amount, bought, this.timestamp, timeInitiated);
-            } catch (RemoteException e) {
-                throw new RuntimeException(e);
-            }
-        });
+        // apply on the thread pool or the sequencer
+        submitTrade(request -> request.set(TradeRequest.Type.BUY_IF_AVAILABLE, product, amount, buyerTimestamp, buyerID, timeInitiated));
     }
 
     // called when seller offers product to trader.
@@ -236,43 +368,1181 @@ public abstract class APeer extends UnicastRemoteObject implements IPeer {
         // simulate crash
         simulateCrash();
 
-        if (this.peerID != this.coordinatorID) {
+        if (getTraderID(product) != this.peerID) {
             throw new RemoteException();
         }
 
-        // add job to thread pool
-        executorService.submit(() -> {
+        // apply on the thread pool or the sequencer
+        submitTrade(request -> request.set(TradeRequest.Type.OFFER, product, amount, sellerTimestamp, sellerID, 0));
+    }
+
+    // checks for each entry of the batch if the product and amount is available at the trader.
+    @Override
+    public final void discoverBatch(Product[] products, int[] amounts, int[] buyerTimestamp, int buyerID) throws RemoteException {
+        // simulate crash
+        simulateCrash();
+
+        if (!tradesAll(products)) {
+            throw new RemoteException();
+        }
+
+        // apply on the thread pool or the sequencer
+        submitTrade(request -> request.set(TradeRequest.Type.DISCOVER_BATCH, products, amounts, buyerTimestamp, buyerID, 0));
+    }
+
+    // buys each entry of the batch that is available, crediting every seller once for the whole batch
+    @Override
+    public final void buyBatch(Product[] products, int[] amounts, int[] buyerTimestamp, int buyerID, long timeInitiated) throws RemoteException {
+        // simulate crash
+        simulateCrash();
+
+        if (!tradesAll(products)) {
+            throw new RemoteException();
+        }
+
+        // apply on the thread pool or the sequencer
+        submitTrade(request -> request.set(TradeRequest.Type.BUY_BATCH, products, amounts, buyerTimestamp, buyerID, timeInitiated));
+    }
+
+    // called when seller offers several products to trader.
+    @Override
+    public final void offerBatch(Product[] products, int[] amounts, int[] sellerTimestamp, int sellerID) throws RemoteException {
+        // simulate crash
+        simulateCrash();
+
+        if (!tradesAll(products)) {
+            throw new RemoteException();
+        }
+
+        // apply on the thread pool or the sequencer
+        submitTrade(request -> request.set(TradeRequest.Type.OFFER_BATCH, products, amounts, sellerTimestamp, sellerID, 0));
+    }
+
+    /**
+     * Hands a trade request to the thread that applies it. In sequencer mode the request is published into the
+     * ring buffer of the sequencer and applied by its thread in order. Otherwise it is applied on the thread pool.
+     * @param translator Fills the request.
+     */
+    private void submitTrade(Consumer<TradeRequest> translator) {
+        if (sequencerMode) {
+            getSequencer().publish(translator);
+        } else {
+            TradeRequest request = new TradeRequest();
+            translator.accept(request);
+            executorService.submit(() -> applyTrade(request));
+        }
+    }
+
+    /**
+     * Applies a trade request to the trader state and acknowledges it.
+     * @param request The request. Not referenced afterwards, so sequencer slots can be reused.
+     */
+    private void applyTrade(TradeRequest request) {
+        // the sequencer thread must not wait for the partitions, it would hold up the release it waits for
+        if (sequencerMode && request.type != TradeRequest.Type.TASK && !hasTraderStateStores() && awaitsRelease() && isTrader(peerID)) {
+            deferredTrades.addLast(request.copy());
+            return;
+        }
+        switch (request.type) {
+            case DISCOVER -> discoverTrade(request.product, request.amount, request.timestamp, request.peerID);
+            case BUY -> buyTrade(request.product, request.amount, request.timestamp, request.peerID, request.timeInitiated);
+            case BUY_IF_AVAILABLE -> buyIfAvailableTrade(request.product, request.amount, request.timestamp, request.peerID, request.timeInitiated);
+            case OFFER -> offerTrade(request.product, request.amount, request.timestamp, request.peerID);
+            case DISCOVER_BATCH -> discoverBatchTrade(request.products, request.amounts, request.timestamp, request.peerID);
+            case BUY_BATCH -> buyBatchTrade(request.products, request.amounts, request.timestamp, request.peerID, request.timeInitiated);
+            case OFFER_BATCH -> offerBatchTrade(request.products, request.amounts, request.timestamp, request.peerID);
+            case TASK -> request.task.run();
+        }
+    }
+
+    /**
+     * Runs a section that reads or changes the trader state. In sequencer mode the sequencer thread owns the
+     * trader state, so the section runs there and the caller waits for it. Otherwise it runs under the trader lock.
+     * @param exclusive True if the section changes which partitions this peer holds, so it takes the write lock.
+     * @param section Section to run.
+     * @return Result of the section.
+     */
+    private <T> T withTraderState(boolean exclusive, Supplier<T> section) {
+        if (sequencerMode) {
+            Sequencer<TradeRequest> sequencer = getSequencer();
+            if (sequencer.isHandlerThread()) {
+                return section.get();
+            }
+            CompletableFuture<T> result = new CompletableFuture<>();
+            sequencer.publish(request -> request.set(() -> {
+                try {
+                    result.complete(section.get());
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            }));
             try {
-                synchronized (this) {
-                    if (this.peerID != this.coordinatorID) {
-                        return;
+                return result.join();
+            } catch (CompletionException e) {
+                throw (RuntimeException) e.getCause();
+            }
+        }
+        Lock lock = exclusive ? traderLock.writeLock() : traderLock.readLock();
+        lock.lock();
+        try {
+            return section.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs a task on the sequencer thread, right away if called on it. Trader state stores confined to the
+     * sequencer thread compact through it.
+     * @param task Task to run.
+     */
+    private void runOnSequencer(Runnable task) {
+        Sequencer<TradeRequest> sequencer = getSequencer();
+        if (sequencer.isHandlerThread()) {
+            task.run();
+        } else {
+            sequencer.publish(request -> request.set(task));
+        }
+    }
+
+    /**
+     * Sends the acknowledgement of a trade. The sequencer thread only applies trades, so in sequencer mode the
+     * acknowledgement is sent from the thread pool.
+     * @param acknowledgement Remote call sending the acknowledgement.
+     */
+    private void acknowledge(Acknowledgement acknowledgement) {
+        if (sequencerMode) {
+            executorService.submit(() -> send(acknowledgement));
+        } else {
+            send(acknowledgement);
+        }
+    }
+
+    private static void send(Acknowledgement acknowledgement) {
+        try {
+            acknowledgement.send();
+        } catch (RemoteException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Remote call acknowledging a trade.
+     */
+    @FunctionalInterface
+    private interface Acknowledgement {
+        void send() throws RemoteException;
+    }
+
+    /**
+     * @return Sequencer of this peer, created when the first trade arrives.
+     */
+    private Sequencer<TradeRequest> getSequencer() {
+        Sequencer<TradeRequest> sequencer = this.sequencer;
+        if (sequencer == null) {
+            synchronized (this) {
+                if (this.sequencer == null) {
+                    this.sequencer = new Sequencer<>(SEQUENCER_CAPACITY, TradeRequest::new, this::applyTrade, "sequencer-" + peerID);
+                }
+                sequencer = this.sequencer;
+            }
+        }
+        return sequencer;
+    }
+
+    // checks if the product and amount is available and acknowledges the discover
+    private void discoverTrade(Product product, int amount, int[] buyerTimestamp, int buyerID) {
+        TraderStateStore store = beginTrade(product);
+        if (store == null) {
+            return;
+        }
+
+        boolean available;
+        int[] timestamp;
+        try {
+            // check if product available
+            available = store.productAvailable(product, amount);
+            if (available) {
+                Logger.log(LogEvent.PRODUCT_AVAILABLE, buyerID, this.peerID, amount, product);
+            } else {
+                Logger.log(LogEvent.PRODUCT_UNAVAILABLE, buyerID, this.peerID, amount, product);
+            }
+
+            // update timestamp
+            timestamp = mergeTimestamp(buyerTimestamp);
+        } finally {
+            endTrade();
+        }
+
+        // send acknowledgement
+        acknowledge(() -> peers[buyerID].discoverAck(product, amount, available, timestamp));
+    }
+
+    // buys the product and acknowledges the buy
+    private void buyTrade(Product product, int amount, int[] buyerTimestamp, int buyerID, long timeInitiated) {
+        TraderStateStore store = beginTrade(product);
+        if (store == null) {
+            return;
+        }
+
+        boolean bought;
+        int[] timestamp;
+        try {
+            // check that timestamp of buyer is valid and update timestamp in one step, then take product out of
+            // stock if available
+            ClockUpdate update = mergeTimestampIfSmaller(buyerTimestamp);
+            if (update != null && store.takeOutOfStock(product, amount, sellerCredit)) {
+                timestamp = update.merged();
+                bought = true;
+                Logger.log(LogEvent.BOUGHT, buyerID, this.peerID, amount, product);
+            } else { // timestamp of this peer is greater or concurrent, or the product is not available.
+                bought = false;
+                Logger.log(LogEvent.BUY_FAILED, buyerID, this.peerID);
+                timestamp = update != null ? revertTimestamp(update) : this.timestamp;
+            }
+        } finally {
+            endTrade();
+        }
+
+        // send acknowledgement
+        acknowledge(() -> peers[buyerID].buyAck(product, amount, bought, timestamp, timeInitiated));
+    }
+
+    // buys the product if it is available and acknowledges the buy
+    private void buyIfAvailableTrade(Product product, int amount, int[] buyerTimestamp, int buyerID, long timeInitiated) {
+        TraderStateStore store = beginTrade(product);
+        if (store == null) {
+            return;
+        }
+
+        boolean bought;
+        int[] timestamp;
+        try {
+            // check and take product out of stock in one step
+            bought = store.takeOutOfStock(product, amount, sellerCredit);
+
+            // update timestamp
+            timestamp = mergeTimestamp(buyerTimestamp);
+
+            if (bought) {
+                Logger.log(LogEvent.BOUGHT, buyerID, this.peerID, amount, product);
+            } else {
+                Logger.log(LogEvent.PRODUCT_UNAVAILABLE, buyerID, this.peerID, amount, product);
+            }
+        } finally {
+            endTrade();
+        }
+
+        // send acknowledgement
+        acknowledge(() -> peers[buyerID].buyAck(product, amount, bought, timestamp, timeInitiated));
+    }
+
+    // adds the offered product to stock and acknowledges the offer
+    private void offerTrade(Product product, int amount, int[] sellerTimestamp, int sellerID) {
+        TraderStateStore store = beginTrade(product);
+        if (store == null) {
+            return;
+        }
+
+        int[] timestamp;
+        try {
+            // add products to stock
+            store.putIntoStock(product, amount, sellerID);
+            Logger.log(LogEvent.ADDED_TO_STOCK, sellerID, this.peerID, amount, product);
+
+            // update timestamp
+            timestamp = mergeTimestamp(sellerTimestamp);
+        } finally {
+            endTrade();
+        }
+
+        // send acknowledge message
+        acknowledge(() -> peers[sellerID].offerAck(timestamp));
+    }
+
+    // checks each entry of the batch and acknowledges the batch
+    private void discoverBatchTrade(Product[] products, int[] amounts, int[] buyerTimestamp, int buyerID) {
+        if (!beginTrade()) {
+            return;
+        }
+
+        boolean[] available = new boolean[products.length];
+        int[] timestamp;
+        try {
+            // check all entries in one go
+            for (int i = 0; i < products.length; i++) {
+                TraderStateStore store = storeFor(products[i]); // null if the partition moved since the batch was sent
+                available[i] = store != null && store.productAvailable(products[i], amounts[i]);
+                Logger.log(available[i] ? LogEvent.PRODUCT_AVAILABLE : LogEvent.PRODUCT_UNAVAILABLE, buyerID, this.peerID, amounts[i], products[i]);
+            }
+
+            // update timestamp once for the batch
+            timestamp = mergeTimestamp(buyerTimestamp);
+        } finally {
+            endTrade();
+        }
+
+        // send one acknowledgement for the batch
+        acknowledge(() -> peers[buyerID].discoverBatchAck(products, amounts, available, timestamp));
+    }
+
+    // buys each available entry of the batch and acknowledges the batch
+    private void buyBatchTrade(Product[] products, int[] amounts, int[] buyerTimestamp, int buyerID, long timeInitiated) {
+        if (!beginTrade()) {
+            return;
+        }
+
+        boolean[] bought = new boolean[products.length];
+        int[] timestamp;
+        try {
+            // check that timestamp of buyer is valid and update timestamp once for the batch
+            ClockUpdate update = mergeTimestampIfSmaller(buyerTimestamp);
+            if (update != null) {
+                for (int i = 0; i < products.length; i++) {
+                    TraderStateStore store = storeFor(products[i]);
+                    bought[i] = store != null && store.takeOutOfStock(products[i], amounts[i], sellerCredit);
+                    if (bought[i]) {
+                        Logger.log(LogEvent.BOUGHT, buyerID, this.peerID, amounts[i], products[i]);
+                    } else {
+                        Logger.log(LogEvent.BUY_FAILED, buyerID, this.peerID);
                     }
+                }
+                timestamp = update.merged();
+            } else { // timestamp of this peer is greater or concurrent.
+                Logger.log(LogEvent.BUY_FAILED, buyerID, this.peerID);
+                timestamp = this.timestamp;
+            }
+        } finally {
+            endTrade();
+        }
+
+        // send one acknowledgement for the batch
+        acknowledge(() -> peers[buyerID].buyBatchAck(products, amounts, bought, timestamp, timeInitiated));
+    }
 
-                    // add products to stock
-                    TraderState traderState = TraderState.readTraderState();
-                    traderState.putIntoStock(product, amount, sellerID);
-                    TraderState.writeTraderState(traderState);
-                    Logger.log(Messages.getAddedToStockMessage(amount, product, sellerID, this.peerID));
+    // adds all offered products to stock and acknowledges the batch
+    private void offerBatchTrade(Product[] products, int[] amounts, int[] sellerTimestamp, int sellerID) {
+        if (!beginTrade()) {
+            return;
+        }
 
-                    // update timestamp
-                    this.timestamp[this.peerID] += 1;
-                    this.timestamp = VectorClock.merge(this.timestamp, sellerTimestamp);
+        int[] timestamp;
+        try {
+            // add all products to stock
+            for (int i = 0; i < products.length; i++) {
+                TraderStateStore store = storeFor(products[i]);
+                if (store == null) {
+                    continue;
                 }
+                store.putIntoStock(products[i], amounts[i], sellerID);
+                Logger.log(LogEvent.ADDED_TO_STOCK, sellerID, this.peerID, amounts[i], products[i]);
+            }
 
-                // send acknowledge message
-                peers[sellerID].offerAck(this.timestamp);
-            } catch (RemoteException e) {
-                throw new RuntimeException(e);
+            // update timestamp once for the batch
+            timestamp = mergeTimestamp(sellerTimestamp);
+        } finally {
+            endTrade();
+        }
+
+        // send one acknowledge message for the batch
+        acknowledge(() -> peers[sellerID].offerAck(timestamp));
+    }
+
+    // Peers that do not handle batches themselves get one acknowledgement per entry.
+    @Override
+    public void discoverBatchAck(Product[] products, int[] amounts, boolean[] available, int[] traderTimestamp) throws RemoteException {
+        for (int i = 0; i < products.length; i++) {
+            discoverAck(products[i], amounts[i], available[i], traderTimestamp);
+        }
+    }
+
+    @Override
+    public void buyBatchAck(Product[] products, int[] amounts, boolean[] bought, int[] traderTimestamp, long timeInitiated) throws RemoteException {
+        for (int i = 0; i < products.length; i++) {
+            buyAck(products[i], amounts[i], bought[i], traderTimestamp, timeInitiated);
+        }
+    }
+
+    /**
+     * Starts a trade: takes the read lock of the trader state and recovers the state of the partitions this peer
+     * just became trader of, waiting up to {@link #ELECTION_TIMEOUT} ms for the previous traders to release them.
+     * In sequencer mode nothing is locked, and trades that would wait were deferred by {@link #applyTrade}.
+     * @return False if this peer trades no partition. If true is returned, the trade has to be finished with
+     *         {@link #endTrade()}.
+     */
+    private boolean beginTrade() {
+        if (sequencerMode) { // on the sequencer thread, which owns the trader state
+            if (hasTraderStateStores()) {
+                return true;
             }
-        });
+            if (crashed || !isTrader(peerID)) {
+                return false;
+            }
+            openTraderStateStores(); // trades that would wait for a release were deferred by applyTrade
+            return true;
+        }
+        traderLock.readLock().lock();
+        if (hasTraderStateStores()) {
+            return true;
+        }
+        traderLock.readLock().unlock();
+
+        // not a trader or the trader state has to be recovered first
+        traderLock.writeLock().lock();
+        try {
+            // wait until the previous traders released the partitions, trades arriving in between are not lost
+            long nanos = TimeUnit.MILLISECONDS.toNanos(ELECTION_TIMEOUT);
+            while (isTrader(peerID) && awaitsRelease() && nanos > 0) {
+                nanos = partitionsAcquired.awaitNanos(nanos);
+            }
+            if (crashed || !isTrader(peerID)) { // trades queued before a crash must not reopen the state
+                return false;
+            }
+            openTraderStateStores();
+            traderLock.readLock().lock(); // downgrade
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            traderLock.writeLock().unlock();
+        }
     }
 
     /**
-     * Simulates trader crash.
+     * @return True if a partition of this peer still waits for its release by the previous trader.
      */
-    private void simulateCrash() throws RemoteException {
-        if (crashed) {
-            throw new RemoteException();
+    private boolean awaitsRelease() {
+        for (boolean awaiting : awaitingRelease) {
+            if (awaiting) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Starts a trade of one product.
+     * @param product Product to trade.
+     * @return Trader state store of the partition of the product, or null if this peer does not trade it. If a
+     *         store is returned, the trade has to be finished with {@link #endTrade()}.
+     */
+    private TraderStateStore beginTrade(Product product) {
+        if (!beginTrade()) {
+            return null;
+        }
+        TraderStateStore store = storeFor(product);
+        if (store == null) {
+            endTrade();
+        }
+        return store;
+    }
+
+    /**
+     * Must be called while holding the trader lock.
+     * @param product Product to trade.
+     * @return Trader state store of the partition of the product, or null if this peer does not trade it.
+     */
+    private TraderStateStore storeFor(Product product) {
+        int[] traderIDs = this.traderIDs;
+        int partition = TraderRouting.partitionOf(product, traderIDs.length);
+        return traderOf(traderIDs, partition) == peerID ? traderStateStores[partition] : null;
+    }
+
+    /**
+     * @return True if this peer trades at least one partition and holds the state of all partitions it trades.
+     */
+    private boolean hasTraderStateStores() {
+        int[] traderIDs = this.traderIDs;
+        boolean trader = false;
+        for (int i = 0; i < traderIDs.length; i++) {
+            if (traderOf(traderIDs, i) == peerID) {
+                trader = true;
+                if (traderStateStores[i] == null) {
+                    return false;
+                }
+            }
+        }
+        return trader;
+    }
+
+    /**
+     * Finishes a trade started with {@link #beginTrade()}.
+     */
+    private void endTrade() {
+        if (!sequencerMode) {
+            traderLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Counts sending a message on the vector clock of this peer.
+     * @return The new timestamp of this peer. It is never changed, so it can be sent as it is.
+     */
+    protected int[] tickTimestamp() {
+        while (true) {
+            int[] current = this.timestamp;
+            int[] next = current.clone();
+            next[this.peerID]++;
+            if (TIMESTAMP.compareAndSet(this, current, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * Updates the vector clock of this peer for a received message. The clock is replaced instead of changed in
+     * place, so the returned timestamp can be sent as it is. Concurrent updates retry instead of waiting for a lock.
+     * @param timestamp Timestamp of the sender.
+     * @return The new timestamp of this peer.
+     */
+    protected int[] mergeTimestamp(int[] timestamp) {
+        while (true) {
+            int[] current = this.timestamp;
+            int[] merged = merge(current, timestamp);
+            if (TIMESTAMP.compareAndSet(this, current, merged)) {
+                return merged;
+            }
+        }
+    }
+
+    /**
+     * Updates the vector clock of this peer for a received message if the clock is strictly smaller than the
+     * timestamp. Checking and updating in one compare-and-set keeps two trades from passing the check with the
+     * same clock.
+     * @param timestamp Timestamp of the sender.
+     * @return The replaced and the new timestamp of this peer, or null if the clock was not smaller.
+     */
+    private ClockUpdate mergeTimestampIfSmaller(int[] timestamp) {
+        while (true) {
+            int[] current = this.timestamp;
+            if (!VectorClock.isSmallerThan(current, timestamp)) {
+                return null;
+            }
+            int[] merged = merge(current, timestamp);
+            if (TIMESTAMP.compareAndSet(this, current, merged)) {
+                return new ClockUpdate(current, merged);
+            }
+        }
+    }
+
+    /**
+     * Undoes the update of a trade that did not happen, unless another message has updated the clock since.
+     * @param update Update returned by {@link #mergeTimestampIfSmaller(int[])}.
+     * @return The current timestamp of this peer.
+     */
+    private int[] revertTimestamp(ClockUpdate update) {
+        TIMESTAMP.compareAndSet(this, update.merged(), update.previous());
+        return this.timestamp;
+    }
+
+    /**
+     * @return Timestamp of this peer after receiving a message with the given timestamp.
+     */
+    private int[] merge(int[] current, int[] timestamp) {
+        int[] merged = VectorClock.merge(current, timestamp);
+        merged[this.peerID] = Math.max(current[this.peerID] + 1, timestamp[this.peerID]);
+        return merged;
+    }
+
+    /**
+     * Update of the vector clock by a trade.
+     * @param previous Timestamp before the trade.
+     * @param merged Timestamp after the trade.
+     */
+    private record ClockUpdate(int[] previous, int[] merged) {}
+
+    /**
+     * Credits a seller with the price of its units and schedules a settlement if none is pending. Every seller
+     * is credited once per trade for all of its units.
+     * @param product Product the units were sold of.
+     * @param sellerID ID of the seller.
+     * @param units Units of the seller that were sold.
+     */
+    private void creditSeller(Product product, int sellerID, int units) {
+        if (settlementLedger.credit(sellerID, product.getPrice() * units)) {
+            PeerExecutors.schedule(this::settlePayments, SETTLEMENT_PERIOD, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Pays every seller the money owed since the last settlement with one payment. Runs outside the lock of
+     * this peer. A payment that fails is credited again and retried with the next settlement, so no money is
+     * lost while a seller cannot be reached.
+     */
+    private void settlePayments() {
+        int[] timestamp = this.timestamp;
+        IntArrayDeque payments = new IntArrayDeque();
+        settlementLedger.settle(payments);
+        for (int i = 0; i < payments.size(); i += 2) {
+            int sellerID = payments.get(i);
+            int money = payments.get(i + 1);
+            try {
+                peers[sellerID].pay(money, timestamp);
+            } catch (RemoteException e) {
+                if (settlementLedger.credit(sellerID, money)) {
+                    PeerExecutors.schedule(this::settlePayments, SETTLEMENT_PERIOD, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return False while an election is in progress, so requests to the old coordinator would be lost.
+     */
+    protected boolean isCoordinatorAvailable() {
+        return !electionState.isInProgress(System.currentTimeMillis());
+    }
+
+    /**
+     * Runs every HEARTBEAT_PERIOD ms. Every trader sends a heartbeat to every other peer, the other peers start
+     * an election when the heartbeats of a trader stop.
+     */
+    private void checkCoordinator() {
+        if (crashed) {
+            return;
+        }
+        if (sendingHeartbeats && isTrader(peerID)) {
+            for (int i = 0; i < peers.length; i++) {
+                if (i == peerID) {
+                    continue;
+                }
+                IPeer peer = peers[i];
+                executorService.submit(() -> {
+                    try {
+                        peer.heartbeat(peerID);
+                    } catch (Exception ignored) {} // crashed peers are noticed by the election
+                });
+            }
+        }
+
+        int[] traderIDs = this.traderIDs;
+        FailureDetector[] failureDetectors = this.failureDetectors;
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < failureDetectors.length && i < traderIDs.length; i++) {
+            if (failureDetectors[i] != null && failureDetectors[i].suspect(now)) {
+                int suspectedID = traderIDs[i];
+                Logger.log(LogEvent.COORDINATOR_SUSPECTED, peerID, suspectedID);
+                try {
+                    coordinatorFailed(suspectedID);
+                } catch (RemoteException e) {
+                    Logger.log(LogEvent.PEER_DOES_NOT_RESPOND, peerID);
+                }
+                return; // one election rebalances all partitions
+            }
+        }
+    }
+
+    /**
+     * Switches to the traders chosen by an election. The partitions this peer no longer trades are handed over
+     * and released before this returns. The partitions it now trades are only opened once every other peer has
+     * released them, see {@link #acquirePartitions}.
+     * @param epoch Epoch of the election that chose the traders.
+     * @param traderIDs New routing table.
+     * @return False if the election is stale.
+     */
+    private boolean updateTraders(int epoch, int[] traderIDs) {
+        int coordinatorID = traderIDs[0];
+        TraderSwitch traderSwitch = withTraderState(true, () -> switchTraders(epoch, traderIDs));
+        if (traderSwitch == null) {
+            return false;
+        }
+        // taken after the last trade and sent before the release is acknowledged, so the new coordinator takes
+        // over from it instead of the disk
+        if (traderSwitch.handover() != null) {
+            sendReplica(coordinatorID, traderSwitch.handover());
+        }
+        if (traderSwitch.acquire()) { // not on the pool of this peer, where trades may be waiting for it
+            PeerExecutors.schedule(() -> acquirePartitions(epoch, traderIDs), 0, TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+
+    /**
+     * Changes the routing table and releases the partitions this peer no longer trades. Must be called while
+     * holding the write lock of the trader state.
+     * @param epoch Epoch of the election that chose the traders.
+     * @param traderIDs New routing table.
+     * @return What is left to do after the lock is released, or null if the election is stale.
+     */
+    private TraderSwitch switchTraders(int epoch, int[] traderIDs) {
+        int coordinatorID = traderIDs[0];
+        if (!electionState.finish(epoch)) {
+            Logger.log(LogEvent.ELECTION_DISCARDED, peerID, epoch);
+            return null;
+        }
+        boolean changed = !Arrays.equals(currentTraderIDs(), traderIDs);
+        if (changed) {
+            Logger.log(LogEvent.PEER_UPDATES_COORDINATOR, this.peerID, coordinatorID);
+        }
+        this.traderIDs = traderIDs; // update routing table and coordinator
+        watchTraders(traderIDs);
+        ReplicationLog.Batch handover = null;
+        if (this.peerID != coordinatorID) {
+            dropReplica(coordinatorID);
+            if (traderIDs.length == 1 && traderStateStores[0] != null) {
+                handover = traderStateStores[0].snapshot();
+            }
+        }
+        releaseTraderStateStores(false); // hand over the partitions moved to other traders
+
+        // partitions this peer trades now but does not hold yet
+        boolean acquire = false;
+        for (int i = 0; i < awaitingRelease.length; i++) {
+            boolean awaiting = traderOf(traderIDs, i) == peerID && traderStateStores[i] == null;
+            acquire |= awaiting && (changed || !awaitingRelease[i]);
+            awaitingRelease[i] = awaiting;
+        }
+        resumeWaitingTrades(); // trades waiting for dropped partitions can give up
+        return new TraderSwitch(handover, acquire);
+    }
+
+    /**
+     * Work left after the routing table was switched.
+     * @param handover Final trader state to send to the new coordinator, or null.
+     * @param acquire True if this peer has to acquire new partitions.
+     */
+    private record TraderSwitch(ReplicationLog.Batch handover, boolean acquire) {}
+
+    /**
+     * Wakes the trades waiting for the partitions of this peer. In sequencer mode they were deferred and are
+     * applied again. Must be called while holding the write lock of the trader state.
+     */
+    private void resumeWaitingTrades() {
+        if (!sequencerMode) {
+            partitionsAcquired.signalAll();
+            return;
+        }
+        for (int i = deferredTrades.size(); i > 0; i--) { // trades deferred again are not retried now
+            applyTrade(deferredTrades.pollFirst());
+        }
+    }
+
+    /**
+     * Tells every other peer the new traders and waits until each has released the partitions it no longer
+     * trades, then opens the partitions of this peer. A peer that does not answer has crashed, and a crashing
+     * peer releases its trader state first.
+     * @param epoch Epoch of the election that chose the traders.
+     * @param traderIDs New routing table.
+     */
+    private void acquirePartitions(int epoch, int[] traderIDs) {
+        for (int i = 0; i < peers.length; i++) {
+            if (i == peerID) {
+                continue;
+            }
+            try {
+                if (!peers[i].release(epoch, traderIDs)) { // a newer election replaces these traders
+                    return;
+                }
+            } catch (Exception ignored) { // crashed peers hold no trader state
+            }
+        }
+
+        withTraderState(true, () -> {
+            if (Arrays.equals(currentTraderIDs(), traderIDs)) { // otherwise the next election acquires its own partitions
+                Arrays.fill(awaitingRelease, false);
+                openTraderStateStores();
+                resumeWaitingTrades();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Tells the initiator of a stale election the outcome of the last one. A peer that was down during several
+     * elections starts its next one with an old epoch, which every other peer discards. Without an answer it
+     * would keep its old traders. Nothing is sent while an election is in progress, that election will reach
+     * the initiator.
+     * @param epoch Epoch of the discarded message.
+     * @param initiatorID ID of the peer that started the stale election.
+     */
+    private void correctStaleInitiator(int epoch, int initiatorID) {
+        Election last = withTraderState(false, () -> {
+            int currentEpoch = electionState.getEpoch();
+            if (epoch >= currentEpoch || initiatorID == peerID || electionState.isInProgress(System.currentTimeMillis())) {
+                return null;
+            }
+            return new Election(currentEpoch, currentTraderIDs());
+        });
+        if (last == null) {
+            return;
+        }
+
+        // untagged, so a rejected answer is not answered again
+        executorService.submit(() -> {
+            try {
+                peers[initiatorID].coordinator(last.epoch(), last.traderIDs(), new int[] {});
+            } catch (Exception e) {
+                Logger.log(LogEvent.PEER_DOES_NOT_RESPOND, initiatorID);
+            }
+        });
+    }
+
+    /**
+     * Outcome of an election.
+     * @param epoch Epoch of the election.
+     * @param traderIDs Routing table it chose.
+     */
+    private record Election(int epoch, int[] traderIDs) {}
+
+    /**
+     * @return Current routing table. It is never changed in place.
+     */
+    private int[] currentTraderIDs() {
+        return this.traderIDs;
+    }
+
+    /**
+     * Starts watching the heartbeats of the traders of the partitions this peer does not trade itself.
+     * @param traderIDs New routing table.
+     */
+    private void watchTraders(int[] traderIDs) {
+        long now = System.currentTimeMillis();
+        FailureDetector[] failureDetectors = new FailureDetector[traderIDs.length];
+        for (int i = 0; i < traderIDs.length; i++) {
+            if (traderIDs[i] != peerID) {
+                failureDetectors[i] = new FailureDetector(HEARTBEAT_TIMEOUT);
+                failureDetectors[i].watch(now);
+            }
+        }
+        this.failureDetectors = failureDetectors;
+        sendingHeartbeats = isTrader(peerID);
+    }
+
+    /**
+     * Starts an election after a request to a trader failed, unless another election has already replaced that
+     * trader. The election chooses new traders for all partitions, so the partitions of the failed trader are
+     * spread over the peers that are alive.
+     * @param failedTraderID Trader the request was sent to.
+     */
+    protected void coordinatorFailed(int failedTraderID) throws RemoteException {
+        if (isTrader(failedTraderID)) {
+            startElection();
+        }
+    }
+
+    /**
+     * @param product Product to trade.
+     * @return ID of the trader of the partition of the product.
+     */
+    public int getTraderID(Product product) {
+        int[] traderIDs = this.traderIDs;
+        return traderOf(traderIDs, TraderRouting.partitionOf(product, traderIDs.length));
+    }
+
+    /**
+     * Sets the traders without an election, for peers that are set up by hand.
+     * @param traderIDs The id of the trader of each product partition, the coordinator first.
+     */
+    public void setTraderIDs(int[] traderIDs) {
+        this.traderIDs = traderIDs.clone();
+    }
+
+    /**
+     * @return ID of the coordinator, the trader of partition 0.
+     */
+    public int getCoordinatorID() {
+        return this.traderIDs[0];
+    }
+
+    /**
+     * @param peerID ID of the peer to check.
+     * @return True if the peer trades at least one partition.
+     */
+    protected boolean isTrader(int peerID) {
+        int[] traderIDs = this.traderIDs;
+        for (int i = 0; i < traderIDs.length; i++) {
+            if (traderOf(traderIDs, i) == peerID) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return True if this peer trades every product, so a batch of them can be applied here.
+     */
+    private boolean tradesAll(Product[] products) {
+        if (!isTrader(peerID)) {
+            return false;
+        }
+        for (Product product : products) {
+            if (getTraderID(product) != peerID) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param traderIDs Routing table.
+     * @param partition Partition to look up.
+     * @return ID of the trader of the partition, or -1 if the routing table has no such partition.
+     */
+    private int traderOf(int[] traderIDs, int partition) {
+        if (partition >= traderIDs.length) {
+            return -1;
+        }
+        return traderIDs[partition];
+    }
+
+    /**
+     * Adds this peer to the election tags and forwards the election to the next peer in the ring that is alive.
+     */
+    private void forwardElection(int epoch, int[] tags) {
+        int[] newTags = getNewTags(tags);
+        Logger.log(LogEvent.PEER_DOING_ELECTION, peerID, newTags);
+        for (int i = 1; i <= peers.length; i++) {
+            int nextPeer = (i + peerID) % peers.length;
+            try { // check if next peer is alive, else try next peer.
+                peers[nextPeer].election(epoch, newTags);
+                break;
+            } catch (Exception e) {
+                Logger.log(LogEvent.PEER_DOES_NOT_RESPOND, nextPeer);
+            }
+        }
+    }
+
+    /**
+     * Bully election. Probes all peers with a higher ID in parallel, and with several traders the lower peers as
+     * well. The highest peers that answer, or this peer if none does, become the traders and all peers are told at
+     * once. This takes two round trips, the ring election takes two hops per peer.
+     */
+    private void runBullyElection(int epoch) {
+        try {
+            Logger.log(LogEvent.PEER_DOING_ELECTION, peerID, new int[] { peerID });
+            int first = traders > 1 ? 0 : peerID + 1;
+            IntArrayDeque probedIDs = new IntArrayDeque();
+            List<Future<?>> probes = new ArrayList<>();
+            for (int i = first; i < peers.length; i++) {
+                if (i == peerID) {
+                    continue;
+                }
+                IPeer peer = peers[i];
+                probedIDs.addLast(i);
+                probes.add(executorService.submit(() -> {
+                    peer.ping();
+                    return null;
+                }));
+            }
+
+            // the highest peers that answer win, lower answers are not needed
+            IntArrayDeque aliveIDs = new IntArrayDeque();
+            aliveIDs.addLast(peerID);
+            for (int i = probes.size() - 1; i >= 0 && aliveIDs.size() <= traders; i--) {
+                try {
+                    probes.get(i).get();
+                    aliveIDs.addLast(probedIDs.get(i));
+                } catch (ExecutionException e) {
+                    Logger.log(LogEvent.PEER_DOES_NOT_RESPOND, probedIDs.get(i));
+                }
+            }
+            int[] traderIDs = TraderRouting.chooseTraders(aliveIDs.toArray(), traders);
+            Logger.log(LogEvent.ELECTION_DONE, traderIDs[0]);
+
+            // announce the traders to every peer in parallel
+            for (int i = 0; i < peers.length; i++) {
+                int nextPeer = i;
+                executorService.submit(() -> {
+                    try {
+                        peers[nextPeer].coordinator(epoch, traderIDs, new int[] { peerID }); // tagged with the initiator
+                    } catch (Exception e) {
+                        Logger.log(LogEvent.PEER_DOES_NOT_RESPOND, nextPeer);
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Simulates trader crash.
+     */
+    private void simulateCrash() throws RemoteException {
+        if (crashed) {
+            throw new RemoteException();
+        }
+    }
+
+    /**
+     * Recovers the in-memory trader state of every partition this peer has started trading, except for the
+     * partitions still awaiting their release by the other peers. With a single trader, the state is taken over
+     * from the replica if this peer was a standby, unless the disk holds later mutations. Otherwise it is
+     * recovered from the last snapshot and the trader log of the partition. Must be called while holding the write lock of the trader state.
+     */
+    private void openTraderStateStores() {
+        int[] traderIDs = this.traderIDs;
+        for (int i = 0; i < traderIDs.length; i++) {
+            if (traderStateStores[i] != null || traderOf(traderIDs, i) != peerID || awaitingRelease[i]) {
+                continue;
+            }
+            if (traderIDs.length > 1) { // the standby peers only copy a single trader
+                traderStateStores[i] = confine(TraderStateStore.open(i));
+                continue;
+            }
+            TraderReplica replica;
+            synchronized (replicaLock) {
+                replica = this.replica;
+                this.replica = null;
+            }
+            TraderStateStore traderStateStore = confine(replica != null && replica.isInitialized() ? TraderStateStore.open(replica) : TraderStateStore.open());
+            traderStateStores[i] = traderStateStore;
+            if (standbys > 0) {
+                chooseStandbys = true;
+                traderStateStore.startReplication(() -> executorService.submit(this::streamToStandbys));
+                executorService.submit(this::streamToStandbys);
+            }
+        }
+    }
+
+    /**
+     * In sequencer mode confines a newly opened trader state store to the sequencer thread.
+     * @param traderStateStore The opened store.
+     * @return The same store.
+     */
+    private TraderStateStore confine(TraderStateStore traderStateStore) {
+        if (sequencerMode) {
+            traderStateStore.confineTo(this::runOnSequencer);
+        }
+        return traderStateStore;
+    }
+
+    /**
+     * Sends the trader state mutations since the last call to every standby peer, and the whole trader state to
+     * standby peers that do not hold it yet. A standby peer that does not answer is replaced by the next lower
+     * peer. The standby peers are the peers with the highest IDs below the coordinator, so one of them wins the
+     * next election.
+     */
+    private void streamToStandbys() {
+        replicationLock.lock();
+        try {
+            if (chooseStandbys) {
+                chooseStandbys = false;
+                if (standbyIDs.length != standbys) {
+                    standbyIDs = new int[standbys];
+                    standbySynced = new boolean[standbys];
+                }
+                Arrays.fill(standbyIDs, -1);
+                for (int i = 0; i < standbyIDs.length; i++) {
+                    standbyIDs[i] = nextStandby(i == 0 ? peerID : standbyIDs[i - 1]);
+                }
+                Arrays.fill(standbySynced, false);
+            }
+
+            boolean pending = true;
+            while (pending) {
+                pending = false;
+                ReplicationLog.Batch[] batches = withTraderState(false, () -> {
+                    TraderStateStore traderStateStore = traderStateStores[0];
+                    if (traderStateStore == null || traderIDs.length > 1) { // no longer the only trader
+                        return null;
+                    }
+                    ReplicationLog.Batch batch = traderStateStore.drainReplication();
+                    ReplicationLog.Batch snapshot = null;
+                    for (int i = 0; i < standbyIDs.length; i++) {
+                        if (standbyIDs[i] != -1 && !standbySynced[i]) {
+                            snapshot = traderStateStore.snapshot(); // contains the batch
+                            break;
+                        }
+                    }
+                    return new ReplicationLog.Batch[] { batch, snapshot };
+                });
+                if (batches == null) {
+                    return;
+                }
+                ReplicationLog.Batch batch = batches[0];
+                ReplicationLog.Batch snapshot = batches[1];
+
+                for (int i = 0; i < standbyIDs.length; i++) {
+                    ReplicationLog.Batch next = standbySynced[i] ? batch : snapshot;
+                    if (standbyIDs[i] == -1 || next == null) {
+                        continue;
+                    }
+                    try {
+                        standbySynced[i] = peers[standbyIDs[i]].replicate(peerID, next.isReset(), next.getSequence(), next.getProducts(), next.getAmounts(), next.getSellerIDs());
+                        pending |= !standbySynced[i];
+                    } catch (Exception e) {
+                        Logger.log(LogEvent.PEER_DOES_NOT_RESPOND, standbyIDs[i]);
+                        standbyIDs[i] = nextStandby(standbyIDs[i]);
+                        pending |= standbyIDs[i] != -1;
+                    }
+                }
+            }
+        } finally {
+            replicationLock.unlock();
+        }
+    }
+
+    /**
+     * @param below ID to search below.
+     * @return Highest peer ID below the given one that is not a standby peer yet, or -1 if there is none.
+     */
+    private int nextStandby(int below) {
+        for (int id = below - 1; id >= 0; id--) {
+            boolean taken = false;
+            for (int standbyID : standbyIDs) {
+                taken |= standbyID == id;
+            }
+            if (!taken) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Sends the final trader state to the standby peers, replacing the mutations streamed so far. A standby peer
+     * that missed the last mutations would otherwise take over without them.
+     * @param state Snapshot taken after the last trade.
+     */
+    private void handOverToStandbys(ReplicationLog.Batch state) {
+        replicationLock.lock();
+        try {
+            for (int standbyID : standbyIDs) {
+                if (standbyID != -1) {
+                    sendReplica(standbyID, state);
+                }
+            }
+        } finally {
+            replicationLock.unlock();
+        }
+    }
+
+    /**
+     * Sends the whole trader state to a peer. Failures are only logged.
+     */
+    private void sendReplica(int receiverID, ReplicationLog.Batch state) {
+        try {
+            peers[receiverID].replicate(peerID, true, state.getSequence(), state.getProducts(), state.getAmounts(), state.getSellerIDs());
+        } catch (Exception e) {
+            Logger.log(LogEvent.PEER_DOES_NOT_RESPOND, receiverID);
+        }
+    }
+
+    /**
+     * Drops the replica unless it copies the new coordinator, which will keep streaming to it.
+     */
+    private void dropReplica(int coordinatorID) {
+        synchronized (replicaLock) {
+            if (replica != null && replica.getPrimaryID() != coordinatorID) {
+                replica = null;
+            }
+        }
+    }
+
+    /**
+     * Compacts the trader logs into snapshots and drops the in-memory state of the partitions.
+     * Must be called while holding the write lock of the trader state.
+     * @param all True to release every partition, false to release the partitions this peer no longer trades.
+     */
+    private void releaseTraderStateStores(boolean all) {
+        int[] traderIDs = this.traderIDs;
+        for (int i = 0; i < traderStateStores.length; i++) {
+            if (traderStateStores[i] != null && (all || traderOf(traderIDs, i) != peerID)) {
+                traderStateStores[i].close();
+                traderStateStores[i] = null;
+            }
         }
     }
 
@@ -316,6 +1586,6 @@ public abstract class APeer extends UnicastRemoteObject implements IPeer {
         long currentTime;
         do {
             currentTime = System.currentTimeMillis();
-        } while(this.coordinatorID == oldCoordinatorID && currentTime - startTime < timeout);
+        } while(getCoordinatorID() == oldCoordinatorID && currentTime - startTime < timeout);
     }
 }
@@ -0,0 +1,95 @@
+package peer;
+
+import product.Product;
+import utils.PeerExecutors;
+import utils.collections.IntArrayDeque;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the requests of a peer for {@link APeer#batchWindow} ms and sends them as one batch per trader, since
+ * a batch is only accepted by a trader of all its products. The window starts with the first request.
+ */
+final class BatchWindow {
+
+    /**
+     * Sends the requests of one trader.
+     */
+    interface Sender {
+
+        /**
+         * Runs on the thread pool of the peer. Handles a failed call itself.
+         * @param traderID ID of the trader to send to.
+         * @param products Products of the requests.
+         * @param amounts Amounts of the requests.
+         * @param timestamp Timestamp of the batch, the same for every trader.
+         * @param timeInitiated Time the first request of the window was initiated.
+         */
+        void send(int traderID, Product[] products, int[] amounts, int[] timestamp, long timeInitiated);
+    }
+
+    private final APeer peer;
+    private final Sender sender;
+
+    // requests waiting for the end of the window. Guarded by pendingProducts.
+    private final List<Product> pendingProducts = new ArrayList<>();
+    private final IntArrayDeque pendingAmounts = new IntArrayDeque();
+    private long timeInitiated;
+
+    BatchWindow(APeer peer, Sender sender) {
+        this.peer = peer;
+        this.sender = sender;
+    }
+
+    /**
+     * Adds a request to the window.
+     * @param product Product of the request.
+     * @param amount Amount of the request.
+     * @param timeInitiated Time the request was initiated.
+     */
+    void add(Product product, int amount, long timeInitiated) {
+        synchronized (pendingProducts) {
+            pendingProducts.add(product);
+            pendingAmounts.addLast(amount);
+            if (pendingProducts.size() == 1) {
+                this.timeInitiated = timeInitiated;
+                PeerExecutors.schedule(this::flush, peer.batchWindow, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    // Send all requests of the window in one message per trader
+    private void flush() {
+        Product[] products;
+        int[] amounts;
+        long timeInitiated;
+        synchronized (pendingProducts) {
+            products = pendingProducts.toArray(new Product[0]);
+            amounts = pendingAmounts.toArray();
+            timeInitiated = this.timeInitiated;
+            pendingProducts.clear();
+            pendingAmounts.clear();
+        }
+        peer.executorService.submit(() -> {
+            int[] timestamp = peer.tickTimestamp();
+            Map<Integer, List<Integer>> entriesByTrader = new HashMap<>();
+            for (int i = 0; i < products.length; i++) {
+                entriesByTrader.computeIfAbsent(peer.getTraderID(products[i]), id -> new ArrayList<>()).add(i);
+            }
+            for (Map.Entry<Integer, List<Integer>> entry : entriesByTrader.entrySet()) {
+                List<Integer> entries = entry.getValue();
+                Product[] traderProducts = new Product[entries.size()];
+                int[] traderAmounts = new int[entries.size()];
+                for (int i = 0; i < entries.size(); i++) {
+                    traderProducts[i] = products[entries.get(i)];
+                    traderAmounts[i] = amounts[entries.get(i)];
+                }
+                sender.send(entry.getKey(), traderProducts, traderAmounts, timestamp, timeInitiated);
+            }
+        });
+    }
+}
@@ -1,42 +1,53 @@
 package peer;
 
 import product.Product;
+import transport.RmiTransport;
+import transport.Transport;
+import utils.LatencyHistogram;
+import utils.LogEvent;
 import utils.Logger;
 import utils.Messages;
-import utils.VectorClock;
+import utils.PeerExecutors;
 
 import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
 import java.util.*;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 public class Buyer extends APeer {
 
+    private static final long serialVersionUID = 1L;
+
     public static void main(String[] args) throws RemoteException {
         int peerID = Integer.parseInt(args[0]);
         int peersAmt = Integer.parseInt(args[1]);
 
-        Registry registry = LocateRegistry.getRegistry("127.0.0.1", REGISTRY_ID);
-        registry.rebind("" + peerID, new Buyer(peerID, peersAmt));
+        Transport transport = Transport.create(System.getProperty("transport", "rmi"), peersAmt);
+        transport.bind(peerID, new Buyer(peerID, peersAmt, transport));
     }
 
     public static final int PERIOD = 5000;
-    private static final int AVERAGE_AMOUNT = 100;
+    public static final int STATISTICS_PERIOD = 10 * PERIOD;
+    public static final boolean FAST_BUY = Boolean.getBoolean("peer.fastBuy"); // buy without discover
 
     private Product product;
     private int amount;
 
-    // for statistics
-    private final List<Long> receivingTimeDeltas;
+    // for statistics, response times in us
+    private final LatencyHistogram responseTimes;
+
+    // discoveries and purchases waiting for the end of the batch window
+    private final BatchWindow discoveries = new BatchWindow(this, this::sendDiscoveries);
+    private final BatchWindow purchases = new BatchWindow(this, this::sendPurchases);
 
     public Buyer(int peerID, int peersAmt) throws RemoteException {
-        super(peerID, peersAmt);
+        this(peerID, peersAmt, new RmiTransport());
+    }
+
+    public Buyer(int peerID, int peersAmt, Transport transport) throws RemoteException {
+        super(peerID, peersAmt, transport);
         pickRandomProduct();
 
-        receivingTimeDeltas = new ArrayList<>();
+        responseTimes = new LatencyHistogram();
     }
 
     // starts buyer
@@ -44,39 +55,47 @@ public class Buyer extends APeer {
     public void start() throws RemoteException {
         super.start();
         Logger.log("Peer " + peerID + " (Buyer)");
-        ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
 
         int initialDelay = new Random().nextInt(0, PERIOD);
         int delay = new Random().nextInt(PERIOD/2, PERIOD);
 
-        executor.scheduleAtFixedRate(() -> {
-            // only buy something if not coordinator
-            if (this.peerID == this.coordinatorID) {
+        PeerExecutors.scheduleAtFixedRate(() -> {
+            // only buy something if not a trader and no election is in progress
+            if (isTrader(this.peerID) || !isCoordinatorAvailable()) {
                 return;
             }
             try {
-                initiateDiscovery(this.product, this.amount);
+                if (FAST_BUY) {
+                    initiateBuyIfAvailable(System.nanoTime(), this.product, this.amount);
+                } else {
+                    initiateDiscovery(this.product, this.amount);
+                }
             } catch (RemoteException e) {
                 throw new RuntimeException(e);
             }
         }, this.peers.length * 200L + initialDelay, delay, TimeUnit.MILLISECONDS);
+
+        // report the response times of each interval
+        PeerExecutors.scheduleAtFixedRate(() -> {
+            LatencyHistogram.Snapshot snapshot = responseTimes.snapshot();
+            if (snapshot.getTotalCount() > 0) {
+                Logger.logStats(Messages.getStatisticsMessage(peerID, snapshot));
+            }
+        }, STATISTICS_PERIOD, STATISTICS_PERIOD, TimeUnit.MILLISECONDS);
     }
 
-    // Handles acknowledgement from coordinator about product availability
+    // Handles acknowledgement from trader about product availability
     @Override
     public void discoverAck(Product product, int amount, boolean available, int[] traderTimestamp) throws RemoteException {
         // add job to thread pool
         executorService.submit(() -> {
             try {
                 // check if ack is valid
-                synchronized(this) {
-                    this.timestamp[this.peerID] += 1;
-                    this.timestamp = VectorClock.merge(this.timestamp, traderTimestamp);
-                }
+                mergeTimestamp(traderTimestamp);
                 // Check if product is available and if so, trigger buy request.
                 // Else, wait for next cycle
                 if (this.product == product && available) {
-                    initiateBuy(System.currentTimeMillis(), product, amount);
+                    initiateBuy(System.nanoTime(), product, amount);
                 }
             } catch (RemoteException e) {
                 throw new RuntimeException(e);
@@ -89,16 +108,9 @@ public class Buyer extends APeer {
     public void buyAck(Product product, int amount, boolean bought, int[] traderTimestamp, long timeInitiated) throws RemoteException {
         // add job to thread pool
         executorService.submit(() -> {
-            receivingTimeDeltas.add(System.currentTimeMillis() - timeInitiated);
-            if (receivingTimeDeltas.size() >= AVERAGE_AMOUNT) {
-                Logger.logStats(Messages.getStatisticsMessage(peerID, receivingTimeDeltas));
-                receivingTimeDeltas.clear();
-            }
+            responseTimes.record((System.nanoTime() - timeInitiated) / 1000);
 
-            synchronized(this) {
-                this.timestamp[this.peerID] += 1;
-                this.timestamp = VectorClock.merge(this.timestamp, traderTimestamp);
-            }
+            mergeTimestamp(traderTimestamp);
             // Check if product was bought successfully and if so, pick new product
             // else, try to buy the same product the next time.
             if (this.product == product && this.amount == amount && bought) {
@@ -117,51 +129,98 @@ public class Buyer extends APeer {
         // Do nothing. This peer is not a Seller
     }
 
-    // Initiate discovery request to coordinator
+    // Initiate discovery request to the trader of the product. With a batch window the discovery is sent together
+    // with the other discoveries of the window.
     public void initiateDiscovery(Product product, int amount) throws RemoteException {
+        if (batchWindow > 0) {
+            discoveries.add(product, amount, System.nanoTime());
+            return;
+        }
+
         // add job to thread pool
         executorService.submit(() -> {
+            int traderID = getTraderID(product); // trader this request is sent to
             try {
-                Logger.log(Messages.getDiscoveryMessage(peerID, amount, product));
-                // updating timestamp and try discovery
-                synchronized(this) {
-                    this.timestamp[this.peerID] += 1;
-                }
-                this.peers[this.coordinatorID].discover(product, amount, this.timestamp, this.peerID);
+                Logger.log(LogEvent.DISCOVERY, peerID, traderID, amount, product);
+                // updating timestamp and try discovery, the sent timestamp is never changed afterwards
+                int[] timestamp = tickTimestamp();
+                this.peers[traderID].discover(product, amount, timestamp, this.peerID);
             } catch (RemoteException e) {
-                try {
-                    Logger.log(Messages.getPeerCouldNotConnectMessage(peerID, coordinatorID));
-                    // coordinator crashed, start election and try buying next time
-                    election(new int[] {});
-                } catch (RemoteException f) {
-                    throw new RuntimeException(f);
-                }
+                traderFailed(traderID);
             }
         });
     }
 
-    // Initiate a purchase request to coordinator
+    // Initiate a purchase request to the trader of the product. With a batch window the purchase is sent together
+    // with the other purchases of the window.
     public void initiateBuy(long timeInitiated, Product product, int amount) throws RemoteException {
+        if (batchWindow > 0) {
+            purchases.add(product, amount, timeInitiated);
+            return;
+        }
+
         // add job to thread pool
         executorService.submit(() -> {
+            int traderID = getTraderID(product); // trader this request is sent to
             try {
-                Logger.log(Messages.getBuyMessage(peerID, amount, product));
-                synchronized (this) {
-                    this.timestamp[this.peerID] += 1;
-                }
-                this.peers[coordinatorID].buy(product, amount, this.timestamp, this.peerID, timeInitiated);
+                Logger.log(LogEvent.BUY, peerID, traderID, amount, product);
+                int[] timestamp = tickTimestamp();
+                this.peers[traderID].buy(product, amount, timestamp, this.peerID, timeInitiated);
             } catch (RemoteException e) {
-                try {
-                    Logger.log(Messages.getPeerCouldNotConnectMessage(peerID, coordinatorID));
-                    // coordinator crashed, start election and try buying next time
-                    election(new int[] {});
-                } catch (RemoteException f) {
-                    throw new RuntimeException(f);
-                }
+                traderFailed(traderID);
             }
         });
     }
 
+    // Initiate a purchase request to the trader of the product that does not need a discovery first
+    public void initiateBuyIfAvailable(long timeInitiated, Product product, int amount) throws RemoteException {
+        // add job to thread pool
+        executorService.submit(() -> {
+            int traderID = getTraderID(product); // trader this request is sent to
+            try {
+                Logger.log(LogEvent.BUY, peerID, traderID, amount, product);
+                int[] timestamp = tickTimestamp();
+                this.peers[traderID].buyIfAvailable(product, amount, timestamp, this.peerID, timeInitiated);
+            } catch (RemoteException e) {
+                traderFailed(traderID);
+            }
+        });
+    }
+
+    // Send the discoveries of the batch window to one trader
+    private void sendDiscoveries(int traderID, Product[] products, int[] amounts, int[] timestamp, long timeInitiated) {
+        try {
+            for (int i = 0; i < products.length; i++) {
+                Logger.log(LogEvent.DISCOVERY, peerID, traderID, amounts[i], products[i]);
+            }
+            this.peers[traderID].discoverBatch(products, amounts, timestamp, this.peerID);
+        } catch (RemoteException e) {
+            traderFailed(traderID);
+        }
+    }
+
+    // Send the purchases of the batch window to one trader
+    private void sendPurchases(int traderID, Product[] products, int[] amounts, int[] timestamp, long timeInitiated) {
+        try {
+            for (int i = 0; i < products.length; i++) {
+                Logger.log(LogEvent.BUY, peerID, traderID, amounts[i], products[i]);
+            }
+            this.peers[traderID].buyBatch(products, amounts, timestamp, this.peerID, timeInitiated);
+        } catch (RemoteException e) {
+            traderFailed(traderID);
+        }
+    }
+
+    // trader crashed, start election and try buying next time
+    private void traderFailed(int traderID) {
+        try {
+            Logger.log(LogEvent.PEER_COULD_NOT_CONNECT, peerID, traderID);
+            coordinatorFailed(traderID);
+        } catch (RemoteException f) {
+            throw new RuntimeException(f);
+        }
+    }
+
     /**
      * Picks a random new product.
      */
@@ -0,0 +1,95 @@
+package peer;
+
+/**
+ * Election bookkeeping of one peer. Every election has an epoch, one higher than the last epoch the starting
+ * peer knew of. Elections are ordered by epoch and then by the ID of the peer that started them. A peer only
+ * takes part in the highest election it has seen and discards the messages of all lower ones, so concurrent
+ * elections collapse into one. While an election is in progress, starting another one at the same peer is
+ * suppressed, unless the running election has not finished within the timeout.
+ */
+class ElectionState {
+
+    private final long timeout;
+
+    private int epoch;
+    private int initiatorID = -1;
+    private boolean inProgress;
+    private long startTime;
+
+    /**
+     * @param timeout Time in ms after which an unfinished election no longer suppresses a new one.
+     */
+    ElectionState(long timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Starts a new election at this peer.
+     * @param peerID ID of this peer.
+     * @param now Current time in ms.
+     * @return Epoch of the new election, or -1 if an election is already in progress.
+     */
+    synchronized int start(int peerID, long now) {
+        if (inProgress && now - startTime < timeout) {
+            return -1;
+        }
+        epoch++;
+        initiatorID = peerID;
+        inProgress = true;
+        startTime = now;
+        return epoch;
+    }
+
+    /**
+     * Checks an election message. Takes part in the election if it is the current one or a higher one.
+     * @param epoch Epoch of the election.
+     * @param initiatorID ID of the peer that started the election.
+     * @param now Current time in ms.
+     * @return true if the message has to be handled, false if it belongs to a stale or lower election.
+     */
+    synchronized boolean accept(int epoch, int initiatorID, long now) {
+        if (epoch == this.epoch && initiatorID == this.initiatorID) {
+            return inProgress;
+        }
+        if (epoch < this.epoch || (epoch == this.epoch && initiatorID < this.initiatorID)) {
+            return false;
+        }
+        this.epoch = epoch;
+        this.initiatorID = initiatorID;
+        inProgress = true;
+        startTime = now;
+        return true;
+    }
+
+    /**
+     * Checks a coordinator message. Ends the election in progress unless the message is from an older epoch.
+     * @param epoch Epoch of the election that chose the coordinator.
+     * @return true if the message has to be handled, false if it is stale.
+     */
+    synchronized boolean finish(int epoch) {
+        if (epoch < this.epoch) {
+            return false;
+        }
+        if (epoch > this.epoch) {
+            this.epoch = epoch;
+            initiatorID = Integer.MAX_VALUE; // this epoch is decided, discard its election messages
+        }
+        inProgress = false;
+        return true;
+    }
+
+    /**
+     * @param now Current time in ms.
+     * @return True if an election is in progress and has not timed out.
+     */
+    synchronized boolean isInProgress(long now) {
+        return inProgress && now - startTime < timeout;
+    }
+
+    /**
+     * @return Highest epoch this peer has seen.
+     */
+    synchronized int getEpoch() {
+        return epoch;
+    }
+}
@@ -17,20 +17,69 @@ public interface IPeer extends Remote {
      */
     int getPeerID() throws RemoteException;
 
+    /**
+     * Changes a logging setting of the peer at runtime.
+     * @param key Setting to change: "level", "overflow" or a log category such as "discovery".
+     * @param value New value, e.g. "INFO" for the level or "off", "on" or N (log 1-in-N) for a category.
+     */
+    void configureLogging(String key, String value) throws RemoteException;
+
     // Coordination
 
+    /**
+     * Starts an election at this peer, unless an election is already in progress.
+     */
+    void startElection() throws RemoteException;
+
     /**
      * Sends an election message to the next peer.
-     * @param tags Contains the ID's of the election.
+     * @param epoch Epoch of the election. Messages of older elections are discarded.
+     * @param tags Contains the ID's of the election, starting with the peer that started it.
      */
-    void election(int[] tags) throws RemoteException;
+    void election(int epoch, int[] tags) throws RemoteException;
 
     /**
-     * Sends a coordinator to the next peer to tell the new coordinator.
-     * @param coordinatorID The id of the new coordinator.
+     * Sends a coordinator to the next peer to tell the new coordinator and the traders of the product partitions.
+     * @param epoch Epoch of the election that chose the coordinator.
+     * @param traderIDs The id of the trader of each product partition. The trader of partition 0 is the new
+     *                  coordinator.
      * @param tags Contains the ID's of the election.
      */
-    void coordinator(int coordinatorID, int[] tags) throws RemoteException;
+    void coordinator(int epoch, int[] traderIDs, int[] tags) throws RemoteException;
+
+    /**
+     * Tells the peer the traders chosen by an election and returns once it has released the trader state of the
+     * partitions it no longer trades. A new trader calls this on every other peer before it opens the state of
+     * its partitions, so two peers never write the files of a partition at the same time.
+     * @param epoch Epoch of the election that chose the traders.
+     * @param traderIDs The id of the trader of each product partition.
+     * @return False if the peer already knows a newer election, so the traders are stale.
+     */
+    boolean release(int epoch, int[] traderIDs) throws RemoteException;
+
+    /**
+     * Probes the peer during a bully election. Returns if the peer is up, throws if it has crashed.
+     */
+    void ping() throws RemoteException;
+
+    /**
+     * Sent periodically by every trader to every other peer, which suspects the trader when it stops.
+     * @param traderID The id of the trader.
+     */
+    void heartbeat(int traderID) throws RemoteException;
+
+    /**
+     * Streams trader state mutations of the coordinator to a standby peer, which takes over this state when it
+     * becomes coordinator.
+     * @param primaryID ID of the coordinator.
+     * @param reset True if the mutations replace the whole state of the standby.
+     * @param sequence Sequence number of the last mutation, or of the whole state if reset.
+     * @param products Product of each mutation.
+     * @param amounts Amount of each mutation.
+     * @param sellerIDs ID of the seller of each offer, -1 for a take.
+     * @return False if the standby misses earlier mutations and needs the whole state.
+     */
+    boolean replicate(int primaryID, boolean reset, long sequence, Product[] products, int[] amounts, int[] sellerIDs) throws RemoteException;
 
     // Trading
 
@@ -58,7 +107,7 @@ public interface IPeer extends Remote {
      * @param amount Amount of products to buy.
      * @param buyerTimestamp Timestamp of the buyer.
      * @param buyerID ID of the buyer who initiated the buy.
-     * @param timeInitiated Time when buy was initiated. Used for statistics.
+     * @param timeInitiated Time when buy was initiated (System.nanoTime() of the buyer). Used for statistics.
      */
     void buy(Product product, int amount, int[] buyerTimestamp, int buyerID, long timeInitiated) throws RemoteException;
 
@@ -68,7 +117,7 @@ public interface IPeer extends Remote {
      * @param amount The amount of product bought.
      * @param bought Indicates if the products were successfully bought.
      * @param traderTimestamp Timestamp of the trader.
-     * @param timeInitiated Time when buy was initiated. Used for statistics.
+     * @param timeInitiated Time when buy was initiated (System.nanoTime() of the buyer). Used for statistics.
      */
     void buyAck(Product product, int amount, boolean bought, int[] traderTimestamp, long timeInitiated) throws RemoteException;
 
@@ -87,6 +136,66 @@ public interface IPeer extends Remote {
      */
     void offerAck(int[] sellerTimestamp) throws RemoteException;
 
+    /**
+     * Buys the product if it is available, without a preceding discover. Checking and taking the stock is one
+     * step at the trader, and the outcome is sent back with {@link #buyAck}.
+     * @param product Product to buy.
+     * @param amount Amount of products to buy.
+     * @param buyerTimestamp Timestamp of the buyer.
+     * @param buyerID ID of the buyer who initiated the buy.
+     * @param timeInitiated Time when buy was initiated (System.nanoTime() of the buyer). Used for statistics.
+     */
+    void buyIfAvailable(Product product, int amount, int[] buyerTimestamp, int buyerID, long timeInitiated) throws RemoteException;
+
+    // Batched trading
+
+    /**
+     * Sends several discover requests to the trader in one message.
+     * @param products Products to discover.
+     * @param amounts Amount to discover of each product.
+     * @param buyerTimestamp Timestamp of the buyer.
+     * @param buyerID ID of the buyer who initiated the discovery.
+     */
+    void discoverBatch(Product[] products, int[] amounts, int[] buyerTimestamp, int buyerID) throws RemoteException;
+
+    /**
+     * Acknowledges a batch of discover requests.
+     * @param products Discovered products.
+     * @param amounts Amounts discovered.
+     * @param available Product available, for each entry.
+     * @param traderTimestamp Timestamp of trader.
+     */
+    void discoverBatchAck(Product[] products, int[] amounts, boolean[] available, int[] traderTimestamp) throws RemoteException;
+
+    /**
+     * Sends several buy requests to the trader in one message. Each entry is bought or not on its own.
+     * @param products Products to buy.
+     * @param amounts Amount to buy of each product.
+     * @param buyerTimestamp Timestamp of the buyer.
+     * @param buyerID ID of the buyer who initiated the buy.
+     * @param timeInitiated Time when buy was initiated (System.nanoTime() of the buyer). Used for statistics.
+     */
+    void buyBatch(Product[] products, int[] amounts, int[] buyerTimestamp, int buyerID, long timeInitiated) throws RemoteException;
+
+    /**
+     * Acknowledges a batch of buy requests.
+     * @param products The products.
+     * @param amounts The amounts of the products.
+     * @param bought Indicates for each entry if the products were successfully bought.
+     * @param traderTimestamp Timestamp of the trader.
+     * @param timeInitiated Time when buy was initiated. Used for statistics.
+     */
+    void buyBatchAck(Product[] products, int[] amounts, boolean[] bought, int[] traderTimestamp, long timeInitiated) throws RemoteException;
+
+    /**
+     * Sends several offers to the trader in one message. Acknowledged with one {@link #offerAck}.
+     * @param products Products to offer.
+     * @param amounts Amount to offer of each product.
+     * @param sellerTimestamp Timestamp of the seller.
+     * @param sellerID ID of the seller who initiated the offer.
+     */
+    void offerBatch(Product[] products, int[] amounts, int[] sellerTimestamp, int sellerID) throws RemoteException;
+
     /**
      * Pays the seller.
      * @param price Amount of money paid.
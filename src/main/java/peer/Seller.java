@@ -1,26 +1,26 @@
 package peer;
 
 import product.Product;
+import transport.RmiTransport;
+import transport.Transport;
+import utils.LogEvent;
 import utils.Logger;
-import utils.Messages;
-import utils.VectorClock;
+import utils.PeerExecutors;
 
 import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
 import java.util.Random;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 public class Seller extends APeer {
 
+    private static final long serialVersionUID = 1L;
+
     public static void main(String[] args) throws RemoteException {
         int peerID = Integer.parseInt(args[0]);
         int peersAmt = Integer.parseInt(args[1]);
 
-        Registry registry = LocateRegistry.getRegistry("127.0.0.1", REGISTRY_ID);
-        registry.rebind("" + peerID, new Seller(peerID, peersAmt));
+        Transport transport = Transport.create(System.getProperty("transport", "rmi"), peersAmt);
+        transport.bind(peerID, new Seller(peerID, peersAmt, transport));
     }
 
     public static final int PERIOD = 5000;
@@ -28,8 +28,15 @@ public class Seller extends APeer {
     // Amount of money earned through sales
     public int money;
 
+    // offers waiting for the end of the batch window
+    private final BatchWindow offers = new BatchWindow(this, this::sendOffers);
+
     public Seller(int peerID, int peersAmt) throws RemoteException {
-        super(peerID, peersAmt);
+        this(peerID, peersAmt, new RmiTransport());
+    }
+
+    public Seller(int peerID, int peersAmt, Transport transport) throws RemoteException {
+        super(peerID, peersAmt, transport);
         this.money = 0;
     }
 
@@ -38,15 +45,13 @@ public class Seller extends APeer {
     public void start() throws RemoteException {
         super.start();
         Logger.log("Peer " + peerID + " (Seller)");
-        ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
 
         int initialDelay = new Random().nextInt(0, PERIOD);
         int delay = new Random().nextInt(PERIOD/2, PERIOD);
 
-
-        executor.scheduleAtFixedRate(() -> {
-            // only sell something if not coordinator
-            if (this.peerID == this.coordinatorID) {
+        PeerExecutors.scheduleAtFixedRate(() -> {
+            // only sell something if not a trader and no election is in progress
+            if (isTrader(this.peerID) || !isCoordinatorAvailable()) {
                 return;
             }
             Product product = Product.pickRandomProduct();
@@ -75,10 +80,7 @@ public class Seller extends APeer {
         // add job to thread pool
         executorService.submit(() -> {
             // this method only exists for keeping the seller timestamp up to date.
-            synchronized (this) {
-                this.timestamp[this.peerID] += 1;
-                this.timestamp = VectorClock.merge(this.timestamp, traderTimestamp);
-            }
+            mergeTimestamp(traderTimestamp);
         });
     }
 
@@ -89,29 +91,46 @@ public class Seller extends APeer {
         executorService.submit(() -> {
             synchronized (this) {
                 money += price; // pay the seller
-
-                // keep the seller timestamp up to date.
-                this.timestamp[this.peerID] += 1;
-                this.timestamp = VectorClock.merge(this.timestamp, traderTimestamp);
             }
 
-            Logger.log(Messages.getPayMoney(this.peerID, price));
+            // keep the seller timestamp up to date.
+            mergeTimestamp(traderTimestamp);
+
+            Logger.log(LogEvent.PAY, this.peerID, 0, price, null);
         });
     }
 
-    // Send offer to coordinator for product and amount
+    // Send offer to the trader of the product for product and amount. With a batch window the offer is sent
+    // together with the other offers of the window.
     public void initiateOffer(Product product, int amount) throws RemoteException {
+        if (batchWindow > 0) {
+            offers.add(product, amount, System.nanoTime());
+            return;
+        }
+
         // add job to thread pool
         executorService.submit(() -> {
             try {
-                synchronized (this) {
-                    this.timestamp[this.peerID] += 1;
-                }
-                Logger.log(Messages.getOfferMessage(peerID, amount, product));
-                this.peers[this.coordinatorID].offer(product, amount, this.timestamp, this.peerID);
+                // the sent timestamp is never changed, a trader in the same JVM does not see the later updates
+                int[] timestamp = tickTimestamp();
+                int traderID = getTraderID(product);
+                Logger.log(LogEvent.OFFER, peerID, traderID, amount, product);
+                this.peers[traderID].offer(product, amount, timestamp, this.peerID);
             } catch (RemoteException e) {
                 throw new RuntimeException(e);
             }
         });
     }
+
+    // Send the offers of the batch window to one trader
+    private void sendOffers(int traderID, Product[] products, int[] amounts, int[] timestamp, long timeInitiated) {
+        try {
+            for (int i = 0; i < products.length; i++) {
+                Logger.log(LogEvent.OFFER, peerID, traderID, amounts[i], products[i]);
+            }
+            this.peers[traderID].offerBatch(products, amounts, timestamp, this.peerID);
+        } catch (RemoteException e) {
+            throw new RuntimeException(e);
+        }
+    }
 }
@@ -0,0 +1,58 @@
+package peer;
+
+import product.Product;
+
+/**
+ * Trade request received by the coordinator. In sequencer mode the requests are pre-allocated slots of the
+ * ring buffer and reused, so a request must not be referenced after it was handled. A task request runs a
+ * change of the trader state on the sequencer thread, which owns the trader state in that mode.
+ */
+final class TradeRequest {
+
+    enum Type { DISCOVER, BUY, BUY_IF_AVAILABLE, OFFER, DISCOVER_BATCH, BUY_BATCH, OFFER_BATCH, TASK }
+
+    Type type;
+    Product product;     // single requests
+    int amount;
+    Product[] products;  // batch requests
+    int[] amounts;
+    int[] timestamp;     // timestamp of the buyer or seller
+    int peerID;          // ID of the buyer or seller
+    long timeInitiated;  // buys only
+    Runnable task;       // tasks only
+
+    void set(Type type, Product product, int amount, int[] timestamp, int peerID, long timeInitiated) {
+        set(type, product, amount, null, null, timestamp, peerID, timeInitiated);
+    }
+
+    void set(Type type, Product[] products, int[] amounts, int[] timestamp, int peerID, long timeInitiated) {
+        set(type, null, 0, products, amounts, timestamp, peerID, timeInitiated);
+    }
+
+    void set(Runnable task) {
+        set(Type.TASK, null, 0, null, null, null, 0, 0);
+        this.task = task;
+    }
+
+    /**
+     * @return Copy of this request that may be kept after the request was handled.
+     */
+    TradeRequest copy() {
+        TradeRequest copy = new TradeRequest();
+        copy.set(type, product, amount, products, amounts, timestamp, peerID, timeInitiated);
+        copy.task = task;
+        return copy;
+    }
+
+    private void set(Type type, Product product, int amount, Product[] products, int[] amounts, int[] timestamp, int peerID, long timeInitiated) {
+        this.type = type;
+        this.product = product;
+        this.amount = amount;
+        this.products = products;
+        this.amounts = amounts;
+        this.timestamp = timestamp;
+        this.peerID = peerID;
+        this.timeInitiated = timeInitiated;
+        this.task = null;
+    }
+}
@@ -0,0 +1,42 @@
+package peer;
+
+import product.Product;
+
+import java.util.Arrays;
+
+/**
+ * Partitions the products across several traders. Product p belongs to partition {@code p.ordinal() % n}, where
+ * n is the length of the routing table. The routing table holds the ID of the trader of each partition and is
+ * chosen by the election from the peers that are alive: the highest peer trades partition 0 and is the
+ * coordinator, the next lower peers trade the following partitions. With fewer peers alive than partitions,
+ * a peer trades several partitions.
+ */
+final class TraderRouting {
+
+    private TraderRouting() {}
+
+    /**
+     * @param product Product to route.
+     * @param partitions Number of partitions.
+     * @return Partition of the product.
+     */
+    static int partitionOf(Product product, int partitions) {
+        return product.ordinal() % partitions;
+    }
+
+    /**
+     * Chooses the traders of the partitions.
+     * @param aliveIDs IDs of the peers that are alive, in any order. Duplicates are ignored.
+     * @param traders Number of traders wanted, at most one per product.
+     * @return Routing table: the ID of the trader of partition i at index i.
+     */
+    static int[] chooseTraders(int[] aliveIDs, int traders) {
+        int[] ids = Arrays.stream(aliveIDs).distinct().sorted().toArray();
+        int partitions = Math.max(1, Math.min(traders, Product.values().length));
+        int[] traderIDs = new int[partitions];
+        for (int i = 0; i < partitions; i++) {
+            traderIDs[i] = ids[ids.length - 1 - i % ids.length];
+        }
+        return traderIDs;
+    }
+}
@@ -0,0 +1,43 @@
+package transport;
+
+import peer.IPeer;
+
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+
+/**
+ * Connects peers that live in the same process. A lookup returns the peer object itself, so a call is a plain
+ * method call without serialization or sockets. Arguments are passed by reference, so callers must not change an
+ * array after sending it.
+ */
+public class DirectTransport implements Transport {
+
+    private final IPeer[] peers;
+
+    public DirectTransport(int peersAmt) {
+        this.peers = new IPeer[peersAmt];
+    }
+
+    @Override
+    public void bind(int peerID, IPeer peer) throws RemoteException {
+        try {
+            UnicastRemoteObject.unexportObject(peer, true); // not reachable through RMI
+        } catch (NoSuchObjectException ignored) {}
+        synchronized (peers) {
+            peers[peerID] = peer;
+        }
+    }
+
+    @Override
+    public IPeer lookup(int peerID) throws RemoteException {
+        IPeer peer;
+        synchronized (peers) {
+            peer = peers[peerID];
+        }
+        if (peer == null) {
+            throw new RemoteException("Peer " + peerID + " is not bound.");
+        }
+        return peer;
+    }
+}
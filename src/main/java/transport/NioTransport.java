@@ -0,0 +1,410 @@
+package transport;
+
+import peer.IPeer;
+import utils.PeerExecutors;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.rmi.ConnectException;
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Connects the peers over TCP with the binary frames of {@link PeerCodec} instead of RMI. A bound peer listens
+ * on {@code basePort + peerID}. A lookup returns a proxy that keeps one connection to the peer open and
+ * multiplexes all calls of this process over it; responses are matched to the calls by their call ID.
+ * <p>
+ * One selector thread accepts connections, reads all frames and writes the frames that did not fit into the socket
+ * buffer. Requests are executed on worker threads, so a peer method may call other peers. Calls are synchronous like RMI calls: they return when the peer method has
+ * returned, and fail with a {@link RemoteException} if the peer threw an exception or cannot be reached.
+ */
+public class NioTransport implements Transport {
+
+    public static final String HOST = "127.0.0.1";
+    public static final int BASE_PORT = Integer.getInteger("transport.port", 20000);
+    public static final long CALL_TIMEOUT = 10000; // ms
+
+    private final String host;
+    private final int basePort;
+    private final Selector selector;
+    private final Queue<Runnable> registrations = new ConcurrentLinkedQueue<>();
+    private final ExecutorService workers = PeerExecutors.newExecutor("nio-worker");
+    private final Map<Integer, IPeer> proxies = new ConcurrentHashMap<>();
+    private final AtomicLong nextCallID = new AtomicLong();
+
+    public NioTransport() {
+        this(HOST, BASE_PORT);
+    }
+
+    public NioTransport(String host, int basePort) {
+        this.host = host;
+        this.basePort = basePort;
+        try {
+            this.selector = Selector.open();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        Thread selectorThread = new Thread(this::selectLoop, "nio-transport");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+    }
+
+    @Override
+    public void bind(int peerID, IPeer peer) throws RemoteException {
+        try {
+            UnicastRemoteObject.unexportObject(peer, true); // not reachable through RMI
+        } catch (NoSuchObjectException ignored) {}
+        try {
+            ServerSocketChannel server = ServerSocketChannel.open();
+            server.bind(new InetSocketAddress(host, basePort + peerID));
+            server.configureBlocking(false);
+            register(server, SelectionKey.OP_ACCEPT, peer);
+        } catch (IOException e) {
+            throw new RemoteException("Peer " + peerID + " cannot listen on port " + (basePort + peerID) + ".", e);
+        }
+    }
+
+    @Override
+    public IPeer lookup(int peerID) {
+        return proxies.computeIfAbsent(peerID, id ->
+                (IPeer) Proxy.newProxyInstance(IPeer.class.getClassLoader(), new Class<?>[] { IPeer.class }, new Client(id)));
+    }
+
+    private void register(SelectableChannel channel, int operations, Object attachment) {
+        registrations.add(() -> {
+            try {
+                SelectionKey key = channel.register(selector, operations, attachment);
+                if (attachment instanceof Connection connection) {
+                    connection.registered(key);
+                }
+            } catch (ClosedChannelException ignored) {}
+        });
+        selector.wakeup();
+    }
+
+    private void selectLoop() {
+        while (true) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                System.err.println("Error in transport: " + e.getMessage());
+                continue;
+            }
+            Runnable registration;
+            while ((registration = registrations.poll()) != null) {
+                registration.run();
+            }
+            for (SelectionKey key : selector.selectedKeys()) {
+                // a failing channel must not stop the loop, it serves all other connections
+                try {
+                    handle(key);
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Error in transport: " + e);
+                    if (key.attachment() instanceof Connection connection) {
+                        connection.close(key);
+                    }
+                }
+            }
+            selector.selectedKeys().clear();
+        }
+    }
+
+    private void handle(SelectionKey key) throws IOException {
+        if (!key.isValid()) {
+            return;
+        }
+        if (key.isAcceptable()) {
+            SocketChannel channel = ((ServerSocketChannel) key.channel()).accept();
+            if (channel != null) {
+                configure(channel);
+                ServerConnection connection = new ServerConnection(channel, (IPeer) key.attachment());
+                connection.registered(channel.register(selector, SelectionKey.OP_READ, connection));
+            }
+            return;
+        }
+        if (key.isWritable()) {
+            ((Connection) key.attachment()).write(key);
+        }
+        if (key.isValid() && key.isReadable()) {
+            ((Connection) key.attachment()).read(key);
+        }
+    }
+
+    private static void configure(SocketChannel channel) throws IOException {
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    }
+
+    /**
+     * Connection that reads length-prefixed frames. Frames are written by the calling threads. When the socket
+     * buffer is full, the rest is queued and written by the selector thread once the socket is writable again.
+     */
+    private abstract static class Connection {
+        protected final SocketChannel channel;
+        private ByteBuffer readBuffer = ByteBuffer.allocate(16 * 1024);
+        // frames not written yet and the key of the channel, null until it is registered. Guarded by writeLock.
+        private final ReentrantLock writeLock = new ReentrantLock();
+        private final Queue<ByteBuffer> pendingFrames = new ArrayDeque<>();
+        private SelectionKey key;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void registered(SelectionKey key) {
+            writeLock.lock();
+            try {
+                this.key = key;
+                if (!pendingFrames.isEmpty()) {
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        void send(ByteBuffer frame) throws IOException {
+            writeLock.lock();
+            try {
+                if (!channel.isOpen()) {
+                    throw new ClosedChannelException();
+                }
+                if (pendingFrames.isEmpty()) {
+                    channel.write(frame);
+                    if (!frame.hasRemaining()) {
+                        return;
+                    }
+                }
+                // socket buffer full
+                pendingFrames.add(frame);
+                if (key != null) {
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    key.selector().wakeup();
+                }
+            } catch (CancelledKeyException e) {
+                throw new ClosedChannelException();
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        void write(SelectionKey key) throws IOException {
+            writeLock.lock();
+            try {
+                ByteBuffer frame;
+                while ((frame = pendingFrames.peek()) != null) {
+                    channel.write(frame);
+                    if (frame.hasRemaining()) {
+                        return;
+                    }
+                    pendingFrames.poll();
+                }
+                key.interestOps(SelectionKey.OP_READ);
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        void read(SelectionKey key) {
+            try {
+                if (channel.read(readBuffer) < 0) {
+                    close(key);
+                    return;
+                }
+            } catch (IOException e) {
+                close(key);
+                return;
+            }
+            readBuffer.flip();
+            while (readBuffer.remaining() >= Integer.BYTES && readBuffer.remaining() >= Integer.BYTES + readBuffer.getInt(readBuffer.position())) {
+                int length = readBuffer.getInt();
+                ByteBuffer frame = ByteBuffer.allocate(length);
+                readBuffer.get(frame.array());
+                handle(frame);
+            }
+            readBuffer.compact();
+            if (!readBuffer.hasRemaining()) {
+                ByteBuffer larger = ByteBuffer.allocate(readBuffer.capacity() * 2);
+                readBuffer.flip();
+                larger.put(readBuffer);
+                readBuffer = larger;
+            }
+        }
+
+        void close(SelectionKey key) {
+            key.cancel();
+            writeLock.lock();
+            try {
+                pendingFrames.clear();
+            } finally {
+                writeLock.unlock();
+            }
+            try {
+                channel.close();
+            } catch (IOException ignored) {}
+            closed();
+        }
+
+        abstract void handle(ByteBuffer frame);
+
+        abstract void closed();
+    }
+
+    /**
+     * Incoming connection of a bound peer. Executes the requests on the peer.
+     */
+    private class ServerConnection extends Connection {
+        private final IPeer peer;
+
+        ServerConnection(SocketChannel channel, IPeer peer) {
+            super(channel);
+            this.peer = peer;
+        }
+
+        @Override
+        void handle(ByteBuffer frame) {
+            long callID = frame.getLong();
+            Method method = PeerCodec.METHODS[frame.get()];
+            Object[] args = PeerCodec.decodeArguments(frame, method);
+            workers.submit(() -> {
+                ByteBuffer response;
+                try {
+                    Object result = method.invoke(peer, args);
+                    response = PeerCodec.encodeResponse(callID, method.getReturnType(), result);
+                } catch (InvocationTargetException e) {
+                    response = PeerCodec.encodeError(callID, String.valueOf(e.getCause()));
+                } catch (IllegalAccessException e) {
+                    response = PeerCodec.encodeError(callID, e.toString());
+                }
+                try {
+                    send(response);
+                } catch (IOException ignored) {} // the caller sees the closed connection
+            });
+        }
+
+        @Override
+        void closed() {}
+    }
+
+    /**
+     * Outgoing connection to a peer. Completes the calls waiting for a response.
+     */
+    private static class ClientConnection extends Connection {
+        private final Map<Long, PendingCall> pendingCalls = new ConcurrentHashMap<>();
+        private volatile boolean closed = false;
+
+        ClientConnection(SocketChannel channel) {
+            super(channel);
+        }
+
+        @Override
+        void handle(ByteBuffer frame) {
+            PendingCall call = pendingCalls.remove(frame.getLong());
+            if (call == null) {
+                return; // timed out
+            }
+            if (frame.get() == PeerCodec.OK) {
+                call.result.complete(PeerCodec.read(frame, call.returnType));
+            } else {
+                call.result.completeExceptionally(new RemoteException((String) PeerCodec.read(frame, String.class)));
+            }
+        }
+
+        @Override
+        void closed() {
+            closed = true;
+            for (PendingCall call : pendingCalls.values()) {
+                call.result.completeExceptionally(new ConnectException("Connection closed."));
+            }
+            pendingCalls.clear();
+        }
+    }
+
+    private record PendingCall(Class<?> returnType, CompletableFuture<Object> result) {}
+
+    /**
+     * Proxy of a peer. Connects on the first call and after the connection was closed.
+     */
+    private class Client implements InvocationHandler {
+        private final int peerID;
+        // guarded by connectLock, a lock instead of a monitor so a virtual thread waiting for the connect does not
+        // pin its carrier thread
+        private final ReentrantLock connectLock = new ReentrantLock();
+        private ClientConnection connection;
+
+        Client(int peerID) {
+            this.peerID = peerID;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                return switch (method.getName()) {
+                    case "equals" -> proxy == args[0];
+                    case "hashCode" -> peerID;
+                    default -> "NioPeer[" + peerID + "]";
+                };
+            }
+
+            ClientConnection connection = connection();
+            long callID = nextCallID.incrementAndGet();
+            PendingCall call = new PendingCall(method.getReturnType(), new CompletableFuture<>());
+            connection.pendingCalls.put(callID, call);
+            try {
+                connection.send(PeerCodec.encodeRequest(callID, method, args == null ? new Object[0] : args));
+                return call.result.get(CALL_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (IOException e) {
+                throw new ConnectException("Peer " + peerID + " cannot be reached.", e);
+            } catch (ExecutionException e) {
+                throw e.getCause();
+            } catch (TimeoutException e) {
+                throw new RemoteException("Call " + method.getName() + " to peer " + peerID + " timed out.");
+            } finally {
+                connection.pendingCalls.remove(callID);
+            }
+        }
+
+        private ClientConnection connection() throws ConnectException {
+            connectLock.lock();
+            try {
+                if (connection == null || connection.closed) {
+                    SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, basePort + peerID));
+                    configure(channel);
+                    connection = new ClientConnection(channel);
+                    register(channel, SelectionKey.OP_READ, connection);
+                }
+                return connection;
+            } catch (IOException e) {
+                throw new ConnectException("Peer " + peerID + " cannot be reached.", e);
+            } finally {
+                connectLock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package transport;
+
+import peer.IPeer;
+import product.Product;
+
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Binary encoding of the {@link IPeer} calls of the {@link NioTransport}. Every frame starts with its length
+ * (without the length field itself) and the ID of the call:
+ * <pre>
+ * request:  int length, long call ID, byte method index, arguments
+ * response: int length, long call ID, byte status, return value (OK) or int length + UTF-8 message (ERROR)
+ * </pre>
+ * Arguments and return values have a fixed layout per type: int, long, boolean as one byte, {@link Product}
+ * as its ordinal in one byte (-1 for null), arrays and String as an int length (-1 for null) and the elements.
+ */
+final class PeerCodec {
+
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    // all IPeer methods in a fixed order, the index is sent instead of the name
+    static final Method[] METHODS = Arrays.stream(IPeer.class.getMethods())
+            .sorted(Comparator.comparing(Method::getName).thenComparing(method -> Arrays.toString(method.getParameterTypes())))
+            .toArray(Method[]::new);
+    private static final Map<Method, Byte> INDEX = new HashMap<>();
+    private static final Product[] PRODUCTS = Product.values();
+
+    static {
+        for (int i = 0; i < METHODS.length; i++) {
+            INDEX.put(METHODS[i], (byte) i);
+        }
+    }
+
+    private PeerCodec() {}
+
+    static ByteBuffer encodeRequest(long callID, Method method, Object[] args) {
+        Class<?>[] types = method.getParameterTypes();
+        int size = Long.BYTES + 1;
+        for (int i = 0; i < types.length; i++) {
+            size += size(types[i], args[i]);
+        }
+        ByteBuffer frame = ByteBuffer.allocate(Integer.BYTES + size);
+        frame.putInt(size).putLong(callID).put(INDEX.get(method));
+        for (int i = 0; i < types.length; i++) {
+            write(frame, types[i], args[i]);
+        }
+        return frame.flip();
+    }
+
+    static Object[] decodeArguments(ByteBuffer frame, Method method) {
+        Class<?>[] types = method.getParameterTypes();
+        Object[] args = new Object[types.length];
+        for (int i = 0; i < types.length; i++) {
+            args[i] = read(frame, types[i]);
+        }
+        return args;
+    }
+
+    static ByteBuffer encodeResponse(long callID, Class<?> returnType, Object result) {
+        int size = Long.BYTES + 1 + size(returnType, result);
+        ByteBuffer frame = ByteBuffer.allocate(Integer.BYTES + size);
+        frame.putInt(size).putLong(callID).put(OK);
+        write(frame, returnType, result);
+        return frame.flip();
+    }
+
+    static ByteBuffer encodeError(long callID, String message) {
+        int size = Long.BYTES + 1 + size(String.class, message);
+        ByteBuffer frame = ByteBuffer.allocate(Integer.BYTES + size);
+        frame.putInt(size).putLong(callID).put(ERROR);
+        write(frame, String.class, message);
+        return frame.flip();
+    }
+
+    private static int size(Class<?> type, Object value) {
+        if (type == void.class) {
+            return 0;
+        } else if (type == int.class) {
+            return Integer.BYTES;
+        } else if (type == long.class) {
+            return Long.BYTES;
+        } else if (type == boolean.class || type == Product.class) {
+            return 1;
+        } else if (type == int[].class) {
+            return Integer.BYTES + (value == null ? 0 : ((int[]) value).length * Integer.BYTES);
+        } else if (type == Product[].class) {
+            return Integer.BYTES + (value == null ? 0 : ((Product[]) value).length);
+        } else if (type == boolean[].class) {
+            return Integer.BYTES + (value == null ? 0 : ((boolean[]) value).length);
+        } else if (type == String.class) {
+            return Integer.BYTES + (value == null ? 0 : ((String) value).getBytes(StandardCharsets.UTF_8).length);
+        }
+        throw new IllegalArgumentException("Type cannot be encoded: " + type);
+    }
+
+    private static void write(ByteBuffer frame, Class<?> type, Object value) {
+        if (type == void.class) {
+            return;
+        } else if (type == int.class) {
+            frame.putInt((Integer) value);
+        } else if (type == long.class) {
+            frame.putLong((Long) value);
+        } else if (type == boolean.class) {
+            frame.put((byte) ((Boolean) value ? 1 : 0));
+        } else if (type == Product.class) {
+            frame.put((byte) (value == null ? -1 : ((Product) value).ordinal()));
+        } else if (type == int[].class) {
+            int[] values = (int[]) value;
+            if (values == null) {
+                frame.putInt(-1);
+                return;
+            }
+            frame.putInt(values.length);
+            for (int v : values) {
+                frame.putInt(v);
+            }
+        } else if (type == Product[].class) {
+            Product[] products = (Product[]) value;
+            if (products == null) {
+                frame.putInt(-1);
+                return;
+            }
+            frame.putInt(products.length);
+            for (Product product : products) {
+                write(frame, Product.class, product);
+            }
+        } else if (type == boolean[].class) {
+            boolean[] values = (boolean[]) value;
+            if (values == null) {
+                frame.putInt(-1);
+                return;
+            }
+            frame.putInt(values.length);
+            for (boolean v : values) {
+                frame.put((byte) (v ? 1 : 0));
+            }
+        } else if (type == String.class) {
+            if (value == null) {
+                frame.putInt(-1);
+                return;
+            }
+            byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+            frame.putInt(bytes.length).put(bytes);
+        } else {
+            throw new IllegalArgumentException("Type cannot be encoded: " + type);
+        }
+    }
+
+    static Object read(ByteBuffer frame, Class<?> type) {
+        if (type == void.class) {
+            return null;
+        } else if (type == int.class) {
+            return frame.getInt();
+        } else if (type == long.class) {
+            return frame.getLong();
+        } else if (type == boolean.class) {
+            return frame.get() != 0;
+        } else if (type == Product.class) {
+            byte ordinal = frame.get();
+            return ordinal < 0 ? null : PRODUCTS[ordinal];
+        } else if (type == int[].class) {
+            int length = frame.getInt();
+            if (length < 0) {
+                return null;
+            }
+            int[] values = new int[length];
+            for (int i = 0; i < length; i++) {
+                values[i] = frame.getInt();
+            }
+            return values;
+        } else if (type == Product[].class) {
+            int length = frame.getInt();
+            if (length < 0) {
+                return null;
+            }
+            Product[] products = new Product[length];
+            for (int i = 0; i < length; i++) {
+                products[i] = (Product) read(frame, Product.class);
+            }
+            return products;
+        } else if (type == boolean[].class) {
+            int length = frame.getInt();
+            if (length < 0) {
+                return null;
+            }
+            boolean[] values = new boolean[length];
+            for (int i = 0; i < length; i++) {
+                values[i] = frame.get() != 0;
+            }
+            return values;
+        } else if (type == String.class) {
+            int length = frame.getInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            frame.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        throw new IllegalArgumentException("Type cannot be decoded: " + type);
+    }
+}
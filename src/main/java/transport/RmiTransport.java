@@ -0,0 +1,45 @@
+package transport;
+
+import peer.IPeer;
+
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+
+/**
+ * Connects the peers through a Java RMI registry. Every call is a remote call with Java serialization, also
+ * between peers in the same process.
+ */
+public class RmiTransport implements Transport {
+
+    public static final String HOST = "127.0.0.1";
+    public static final int REGISTRY_ID = 1099;
+
+    private final String host;
+    private final int port;
+
+    public RmiTransport() {
+        this(HOST, REGISTRY_ID);
+    }
+
+    public RmiTransport(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    @Override
+    public void bind(int peerID, IPeer peer) throws RemoteException {
+        LocateRegistry.getRegistry(host, port).rebind("" + peerID, peer);
+    }
+
+    @Override
+    public IPeer lookup(int peerID) throws RemoteException {
+        Registry registry = LocateRegistry.getRegistry(host, port);
+        try {
+            return (IPeer) registry.lookup("" + peerID);
+        } catch (NotBoundException e) {
+            throw new RemoteException("Peer " + peerID + " is not bound.", e);
+        }
+    }
+}
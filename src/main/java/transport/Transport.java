@@ -0,0 +1,40 @@
+package transport;
+
+import peer.IPeer;
+
+import java.rmi.RemoteException;
+
+/**
+ * Connects the peers with each other. A peer binds itself under its ID and looks the other peers up by ID;
+ * the returned reference decides how the calls on it reach the peer.
+ */
+public interface Transport {
+    /**
+     * Makes a peer reachable for the other peers.
+     * @param peerID ID of the peer.
+     * @param peer The peer.
+     */
+    void bind(int peerID, IPeer peer) throws RemoteException;
+
+    /**
+     * Returns a reference to a peer.
+     * @param peerID ID of the peer.
+     * @return Reference to call the peer with.
+     */
+    IPeer lookup(int peerID) throws RemoteException;
+
+    /**
+     * Creates a transport by name.
+     * @param name "direct", "rmi" or "nio".
+     * @param peersAmt Number of peers.
+     * @return The transport.
+     */
+    static Transport create(String name, int peersAmt) {
+        return switch (name) {
+            case "direct" -> new DirectTransport(peersAmt);
+            case "rmi" -> new RmiTransport();
+            case "nio" -> new NioTransport();
+            default -> throw new IllegalArgumentException("Unknown transport: " + name);
+        };
+    }
+}
@@ -0,0 +1,132 @@
+package utils;
+
+import product.Product;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes log records in a compact binary layout to {@code trading_post_log.bin}:
+ * <pre>
+ * long time, byte event, int peer ID, int other ID, int amount, byte product (-1 if none),
+ * int tags length (-1 if none), tags length * int tag, int text length (-1 if none), UTF-8 text
+ * </pre>
+ * Run {@code java utils.BinaryLogSink <file>} to print a binary log as text.
+ */
+public class BinaryLogSink implements LogSink {
+
+    public static final Path LOG_FILE = Paths.get("trading_post_log.bin");
+
+    private static final LogEvent[] EVENTS = LogEvent.values();
+    private static final Product[] PRODUCTS = Product.values();
+
+    private ByteBuffer batch = ByteBuffer.allocate(64 * 1024);
+    private FileChannel channel;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: BinaryLogSink <file>");
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(Paths.get(args[0])));
+        LogRecord record = new LogRecord();
+        while (buffer.hasRemaining()) {
+            read(buffer, record);
+            System.out.println(record.getTime() + " " + record.format());
+        }
+    }
+
+    @Override
+    public void write(LogRecord record) {
+        int[] tags = record.getTags();
+        byte[] text = record.getText() == null ? null : record.getText().getBytes(StandardCharsets.UTF_8);
+        int size = Long.BYTES + 2 + 5 * Integer.BYTES
+                + (tags == null ? 0 : tags.length * Integer.BYTES)
+                + (text == null ? 0 : text.length);
+        ensureCapacity(size);
+
+        batch.putLong(record.getTime())
+                .put((byte) record.getEvent().ordinal())
+                .putInt(record.getPeerID())
+                .putInt(record.getOtherID())
+                .putInt(record.getAmount())
+                .put((byte) (record.getProduct() == null ? -1 : record.getProduct().ordinal()));
+        if (tags == null) {
+            batch.putInt(-1);
+        } else {
+            batch.putInt(tags.length);
+            for (int tag : tags) {
+                batch.putInt(tag);
+            }
+        }
+        if (text == null) {
+            batch.putInt(-1);
+        } else {
+            batch.putInt(text.length).put(text);
+        }
+    }
+
+    @Override
+    public void flush() {
+        batch.flip();
+        try {
+            if (batch.hasRemaining() && channel == null) {
+                channel = FileChannel.open(LOG_FILE, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            }
+            while (batch.hasRemaining()) {
+                channel.write(batch);
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing to log file: " + e.getMessage());
+        }
+        batch.clear();
+    }
+
+    /**
+     * Decodes the next record of a binary log.
+     * @param buffer Buffer positioned at the start of a record.
+     * @param record Record to fill.
+     */
+    static void read(ByteBuffer buffer, LogRecord record) {
+        long time = buffer.getLong();
+        LogEvent event = EVENTS[buffer.get()];
+        int peerID = buffer.getInt();
+        int otherID = buffer.getInt();
+        int amount = buffer.getInt();
+        byte product = buffer.get();
+
+        int[] tags = null;
+        int tagsLength = buffer.getInt();
+        if (tagsLength >= 0) {
+            tags = new int[tagsLength];
+            for (int i = 0; i < tagsLength; i++) {
+                tags[i] = buffer.getInt();
+            }
+        }
+
+        String text = null;
+        int textLength = buffer.getInt();
+        if (textLength >= 0) {
+            byte[] bytes = new byte[textLength];
+            buffer.get(bytes);
+            text = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        record.set(event, time, peerID, otherID, amount, product < 0 ? null : PRODUCTS[product], tags, text);
+    }
+
+    private void ensureCapacity(int size) {
+        if (batch.remaining() < size) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(batch.capacity() * 2, batch.position() + size));
+            batch.flip();
+            larger.put(batch);
+            batch = larger;
+        }
+    }
+}
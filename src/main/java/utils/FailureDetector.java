@@ -0,0 +1,52 @@
+package utils;
+
+/**
+ * Timeout based failure detector for the coordinator. The coordinator sends heartbeats periodically, and it is
+ * suspected to have failed when no heartbeat arrived for longer than the timeout. The detector only watches a
+ * coordinator after {@link #watch} and stops watching once it has reported a suspicion, so one failure is only
+ * reported once.
+ */
+public class FailureDetector {
+
+    private final long timeout;
+
+    private boolean watching;
+    private long lastHeartbeat;
+
+    /**
+     * @param timeout Time in ms without heartbeat after which the coordinator is suspected.
+     */
+    public FailureDetector(long timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Starts watching a new coordinator. It gets a full timeout before it is suspected.
+     * @param now Current time in ms.
+     */
+    public synchronized void watch(long now) {
+        watching = true;
+        lastHeartbeat = now;
+    }
+
+    /**
+     * Records a heartbeat of the watched coordinator.
+     * @param now Current time in ms.
+     */
+    public synchronized void heartbeat(long now) {
+        lastHeartbeat = Math.max(lastHeartbeat, now);
+    }
+
+    /**
+     * Checks whether the watched coordinator has failed. Stops watching if it has.
+     * @param now Current time in ms.
+     * @return True the first time the coordinator is suspected.
+     */
+    public synchronized boolean suspect(long now) {
+        if (!watching || now - lastHeartbeat <= timeout) {
+            return false;
+        }
+        watching = false;
+        return true;
+    }
+}
@@ -0,0 +1,106 @@
+package utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe latency histogram with a fixed memory footprint. Values are counted in log-linear buckets: the
+ * values below {@link #SUB_BUCKETS} have a bucket each, every larger power of two is split into
+ * {@code SUB_BUCKETS / 2} buckets, so a reported value is at most 1/64 (about 1.6%) above the recorded one.
+ * Values above {@link #MAX_VALUE} are counted as {@code MAX_VALUE}.
+ * <p>
+ * {@link #record} only increments a counter. {@link #snapshot} takes the counts recorded since the last
+ * snapshot and resets them, so each snapshot describes one interval.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+    public static final long MAX_VALUE = 3_600_000_000L; // one hour in us
+
+    private final AtomicLongArray counts = new AtomicLongArray(bucketIndex(MAX_VALUE) + 1);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Counts a value.
+     * @param value Value to count, e.g. a latency in us. Negative values are counted as 0.
+     */
+    public void record(long value) {
+        value = Math.max(0, Math.min(value, MAX_VALUE));
+        counts.incrementAndGet(bucketIndex(value));
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * Takes the counts recorded since the last snapshot and resets them.
+     * @return The snapshot.
+     */
+    public Snapshot snapshot() {
+        long[] snapshotCounts = new long[counts.length()];
+        long total = 0;
+        for (int i = 0; i < snapshotCounts.length; i++) {
+            if (counts.get(i) != 0) {
+                snapshotCounts[i] = counts.getAndSet(i, 0);
+                total += snapshotCounts[i];
+            }
+        }
+        return new Snapshot(snapshotCounts, total, max.getAndSet(0));
+    }
+
+    /**
+     * Counts of one interval.
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long totalCount;
+        private final long maxValue;
+
+        private Snapshot(long[] counts, long totalCount, long maxValue) {
+            this.counts = counts;
+            this.totalCount = totalCount;
+            this.maxValue = maxValue;
+        }
+
+        public long getTotalCount() {
+            return totalCount;
+        }
+
+        public long getMaxValue() {
+            return maxValue;
+        }
+
+        /**
+         * @param percentile Percentile between 0 and 100.
+         * @return Highest value of the bucket the percentile falls into, at most the maximum recorded value.
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (totalCount == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValueInBucket(i), maxValue);
+                }
+            }
+            return maxValue;
+        }
+    }
+
+    static int bucketIndex(long value) {
+        int shift = Math.max(0, Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+        return HALF_SUB_BUCKETS * shift + (int) (value >>> shift);
+    }
+
+    static long highestValueInBucket(int index) {
+        int shift = Math.max(0, index / HALF_SUB_BUCKETS - 1);
+        long subBucket = index - (long) HALF_SUB_BUCKETS * shift;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
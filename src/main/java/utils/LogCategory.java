@@ -0,0 +1,13 @@
+package utils;
+
+/**
+ * Category of a log event. Each category can be switched off or sampled on its own in the {@link Logger}.
+ */
+public enum LogCategory {
+    GENERAL,
+    ELECTION,
+    DISCOVERY,
+    BUY,
+    OFFER,
+    PAY
+}
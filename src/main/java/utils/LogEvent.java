@@ -0,0 +1,155 @@
+package utils;
+
+/**
+ * Types of the structured log events. Each type knows which fields of a {@link LogRecord} it uses and how to
+ * turn them into the human-readable message of {@link Messages}. The text is only built by a sink.
+ */
+public enum LogEvent {
+    TEXT(LogCategory.GENERAL, LogLevel.INFO) {
+        @Override
+        public String format(LogRecord record) {
+            return record.getText();
+        }
+    },
+    STATISTICS(LogCategory.GENERAL, LogLevel.INFO) {
+        @Override
+        public String format(LogRecord record) {
+            return record.getText();
+        }
+    },
+    // peerID: new coordinator
+    ELECTION_DONE(LogCategory.ELECTION, LogLevel.INFO) {
+        @Override
+        public String format(LogRecord record) {
+            return Messages.getElectionDoneMessage(record.getPeerID());
+        }
+    },
+    // peerID: peer forwarding the election, tags: election tags
+    PEER_DOING_ELECTION(LogCategory.ELECTION, LogLevel.INFO) {
+        @Override
+        public String format(LogRecord record) {
+            return Messages.getPeerDoingElectionMessage(record.getPeerID(), record.getTags());
+        }
+    },
+    // peerID: peer discarding the election, otherID: epoch of the election
+    ELECTION_DISCARDED(LogCategory.ELECTION, LogLevel.DEBUG) {
+        @Override
+        public String format(LogRecord record) {
+            return Messages.getElectionDiscardedMessage(record.getPeerID(), record.getOtherID());
+        }
+    },
+    // peerID: peer suspecting the coordinator, otherID: coordinator without heartbeats
+    COORDINATOR_SUSPECTED(LogCategory.ELECTION, LogLevel.WARN) {
+        @Override
+        public String format(LogRecord record) {
+            return Messages.getCoordinatorSuspectedMessage(record.getPeerID(), record.getOtherID());
+        }
+    },
+    // peerID: peer not responding
+    PEER_DOES_NOT_RESPOND(LogCategory.ELECTION, LogLevel.WARN) {
+        @Override
+        public String format(LogRecord record) {
+            return Messages.getPeerDoesNotRespondMessage(record.getPeerID());
+        }
+    },
+    // peerID: peer updating its coordinator, otherID: new coordinator
+    PEER_UPDATES_COORDINATOR(LogCategory.ELECTION, LogLevel.INFO) {
+        @Override
+        public String format(LogRecord record) {
+            return Messages.getPeerUpdatesCoordinatorMessage(record.getPeerID(), record.getOtherID());
+        }
+    },
+    // peerID: buyer, otherID: coordinator, amount and product bought
+    BOUGHT(LogCategory.BUY, LogLevel.INFO) {
+        @Override
+        public String format(LogRecord record) {
+            return Messages.getBoughtMessage(record.getAmount(), record.getProduct(), record.getOtherID(), record.getPeerID());
+        }
+    },
+    // peerID: buyer, otherID: coordinator
+    BUY_FAILED(LogCategory.BUY, LogLevel.INFO) {
+        @Override
+        public String format(LogRecord record) {
+            return Messages.getBuyFailedMessage(record.getPeerID(), record.getOtherID());
+        }
+    },
+    // peerID: seller, otherID: coordinator, amount and product offered
+    ADDED_TO_STOCK(LogCategory.OFFER, LogLevel.INFO) {
+        @Override
+        public String format(LogRecord record) {
+            return Messages.getAddedToStockMessage(record.getAmount(), record.getProduct(), record.getPeerID(), record.getOtherID());
+        }
+    },
+    // peerID: buyer, amount and product looked for
+    DISCOVERY(LogCategory.DISCOVERY, LogLevel.DEBUG) {
+        @Override
+        public String format(LogRecord record) {
+            return Messages.getDiscoveryMessage(record.getPeerID(), record.getAmount(), record.getProduct());
+        }
+    },
+    // peerID: buyer, amount and product to buy
+    BUY(LogCategory.BUY, LogLevel.DEBUG) {
+        @Override
+        public String format(LogRecord record) {
+            return Messages.getBuyMessage(record.getPeerID(), record.getAmount(), record.getProduct());
+        }
+    },
+    // peerID: seller, amount: money received
+    PAY(LogCategory.PAY, LogLevel.DEBUG) {
+        @Override
+        public String format(LogRecord record) {
+            return Messages.getPayMoney(record.getPeerID(), record.getAmount());
+        }
+    },
+    // peerID: seller, amount and product offered
+    OFFER(LogCategory.OFFER, LogLevel.DEBUG) {
+        @Override
+        public String format(LogRecord record) {
+            return Messages.getOfferMessage(record.getPeerID(), record.getAmount(), record.getProduct());
+        }
+    },
+    // peerID: buyer, amount and product available
+    PRODUCT_AVAILABLE(LogCategory.DISCOVERY, LogLevel.DEBUG) {
+        @Override
+        public String format(LogRecord record) {
+            return Messages.getProductAvailableMessage(record.getAmount(), record.getProduct(), record.getPeerID());
+        }
+    },
+    // peerID: buyer, amount and product not available
+    PRODUCT_UNAVAILABLE(LogCategory.DISCOVERY, LogLevel.DEBUG) {
+        @Override
+        public String format(LogRecord record) {
+            return Messages.getProductUnavailableMessage(record.getAmount(), record.getProduct(), record.getPeerID());
+        }
+    },
+    // peerID: peer, otherID: unreachable coordinator
+    PEER_COULD_NOT_CONNECT(LogCategory.GENERAL, LogLevel.WARN) {
+        @Override
+        public String format(LogRecord record) {
+            return Messages.getPeerCouldNotConnectMessage(record.getPeerID(), record.getOtherID());
+        }
+    };
+
+    private final LogCategory category;
+    private final LogLevel level;
+
+    LogEvent(LogCategory category, LogLevel level) {
+        this.category = category;
+        this.level = level;
+    }
+
+    public LogCategory getCategory() {
+        return category;
+    }
+
+    public LogLevel getLevel() {
+        return level;
+    }
+
+    /**
+     * Builds the human-readable message of a record of this type.
+     * @param record Record to format.
+     * @return The message.
+     */
+    public abstract String format(LogRecord record);
+}
@@ -0,0 +1,10 @@
+package utils;
+
+/**
+ * Severity of a log event. Events below the level set in the {@link Logger} are not logged.
+ */
+public enum LogLevel {
+    DEBUG, // every step of the trade path
+    INFO,  // completed trades, elections and coordinator changes
+    WARN   // unreachable peers
+}
@@ -0,0 +1,81 @@
+package utils;
+
+import product.Product;
+
+/**
+ * A structured log event. Records are preallocated slots of the logger ring buffer and are reused, so sinks
+ * must not keep a reference to a record after {@link LogSink#write} returns.
+ */
+public final class LogRecord {
+
+    private LogEvent event;
+    private long time;
+    private int peerID;
+    private int otherID;
+    private int amount;
+    private Product product;
+    private int[] tags;
+    private String text;
+
+    void set(LogEvent event, long time, int peerID, int otherID, int amount, Product product, int[] tags, String text) {
+        this.event = event;
+        this.time = time;
+        this.peerID = peerID;
+        this.otherID = otherID;
+        this.amount = amount;
+        this.product = product;
+        this.tags = tags;
+        this.text = text;
+    }
+
+    /**
+     * Drops the references of this record so the slot does not keep them alive.
+     */
+    void clear() {
+        this.product = null;
+        this.tags = null;
+        this.text = null;
+    }
+
+    public LogEvent getEvent() {
+        return event;
+    }
+
+    /**
+     * @return Time the event was logged in ms since the epoch.
+     */
+    public long getTime() {
+        return time;
+    }
+
+    public int getPeerID() {
+        return peerID;
+    }
+
+    public int getOtherID() {
+        return otherID;
+    }
+
+    public int getAmount() {
+        return amount;
+    }
+
+    public Product getProduct() {
+        return product;
+    }
+
+    public int[] getTags() {
+        return tags;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return Human-readable message of this record.
+     */
+    public String format() {
+        return event.format(this);
+    }
+}
@@ -0,0 +1,17 @@
+package utils;
+
+/**
+ * Destination of the log records. Sinks are only called by the single logger writer thread.
+ */
+public interface LogSink {
+    /**
+     * Encodes a record into the current batch.
+     * @param record Record to encode. Only valid until this method returns.
+     */
+    void write(LogRecord record);
+
+    /**
+     * Writes the current batch out.
+     */
+    void flush();
+}
@@ -1,48 +1,357 @@
 package utils;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import product.Product;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Asynchronous logger. The log methods only copy the event type and its primitive fields into a preallocated
+ * {@link LogRecord} slot of a bounded ring buffer; no message text is built on the calling thread. Claiming the
+ * slot takes one process-wide lock, held only for the copy, so logging threads still serialize on it briefly.
+ * A single writer thread drains the buffer in batches and hands each record to the configured {@link LogSink}s,
+ * which format and write them. A record a sink fails to write is dropped and counted, the writer keeps going.
+ * The sinks are chosen with {@code -Dlogger.sink=text|binary|text,binary}.
+ * What happens when the buffer is full is decided by the {@link OverflowPolicy}.
+ * <p>
+ * Events below the {@link LogLevel} are discarded before they reach the buffer, and every {@link LogCategory}
+ * can be switched off or sampled 1-in-N. Both are set at startup with {@code -Dlogger.level=DEBUG|INFO|WARN}
+ * and {@code -Dlogger.<category>=on|off|N} (e.g. {@code -Dlogger.discovery=10}) and can be changed at runtime
+ * with {@link #configure}.
+ */
 public class Logger {
-    private static final String LOG_FILE = "trading_post_log.txt"; // Path to the log file
-    private static final String STATS_FILE = "trading_post_stats.txt";
 
-    // Date and time formatter
-    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss.SSS");
+    /**
+     * Decides what happens to a message when the ring buffer is full.
+     */
+    public enum OverflowPolicy {
+        BLOCK,  // wait until the writer frees a slot
+        DROP,   // drop the message
+        SAMPLE  // keep every SAMPLE_RATE-th message by waiting for a slot, drop the others
+    }
+
+    public static final int CAPACITY = Integer.getInteger("logger.capacity", 8192); // rounded up to a power of two
+    public static final int SAMPLE_RATE = 16;
+
+    private static volatile LogLevel level = LogLevel.valueOf(System.getProperty("logger.level", LogLevel.DEBUG.name()).toUpperCase());
+
+    // 0: category off, 1: every event, N: every N-th event
+    private static final AtomicIntegerArray sampleRates = new AtomicIntegerArray(LogCategory.values().length);
+    private static final AtomicLongArray sampleCounters = new AtomicLongArray(LogCategory.values().length);
+
+    private static final LogSink[] sinks = createSinks(System.getProperty("logger.sink", "text"));
+
+    private static final LogRecord[] ring = createRing(CAPACITY);
+    private static final int mask = ring.length - 1;
+
+    private static final ReentrantLock lock = new ReentrantLock();
+    private static final Condition notEmpty = lock.newCondition();
+    private static final Condition notFull = lock.newCondition();
+    private static final Condition drained = lock.newCondition();
+
+    // guarded by lock
+    private static long head = 0; // next slot the writer reads
+    private static long tail = 0; // next slot a producer fills
+    private static long written = 0; // slots the writer has finished
+    private static boolean writerWaiting = false;
+    private static long overflowCount = 0;
+    private static long dropped = 0;
+
+    private static volatile OverflowPolicy overflowPolicy =
+            OverflowPolicy.valueOf(System.getProperty("logger.overflow", OverflowPolicy.BLOCK.name()).toUpperCase());
+
+    static {
+        for (LogCategory category : LogCategory.values()) {
+            String property = "logger." + category.name().toLowerCase();
+            sampleRates.set(category.ordinal(), parseSampleRate(System.getProperty(property, "on")));
+        }
+
+        Thread writer = new Thread(Logger::writeLoop, "logger");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> flush(1000)));
+    }
 
     // Method to log messages with a timestamp
-    public synchronized static void log(String message) {
-        String timestamp = LocalDateTime.now().format(formatter);
-        String logMessage = timestamp + " " + message;
+    public static void log(String message) {
+        publish(LogEvent.TEXT, 0, 0, 0, null, null, message);
+    }
+
+    // Method to log statistics without a timestamp
+    public static void logStats(String message) {
+        publish(LogEvent.STATISTICS, 0, 0, 0, null, null, message);
+    }
+
+    /**
+     * Logs an event that only concerns one peer.
+     * @param event Type of the event.
+     * @param peerID Peer the event is about.
+     */
+    public static void log(LogEvent event, int peerID) {
+        publish(event, peerID, 0, 0, null, null, null);
+    }
+
+    /**
+     * Logs an event between two peers.
+     * @param event Type of the event.
+     * @param peerID Peer the event is about.
+     * @param otherID Other peer involved.
+     */
+    public static void log(LogEvent event, int peerID, int otherID) {
+        publish(event, peerID, otherID, 0, null, null, null);
+    }
+
+    /**
+     * Logs an event about a product.
+     * @param event Type of the event.
+     * @param peerID Peer the event is about.
+     * @param otherID Other peer involved, ignored by events that only concern one peer.
+     * @param amount Amount of the product or money.
+     * @param product Product, may be null.
+     */
+    public static void log(LogEvent event, int peerID, int otherID, int amount, Product product) {
+        publish(event, peerID, otherID, amount, product, null, null);
+    }
+
+    /**
+     * Logs an election event.
+     * @param event Type of the event.
+     * @param peerID Peer the event is about.
+     * @param tags Election tags. Must not be modified afterwards.
+     */
+    public static void log(LogEvent event, int peerID, int[] tags) {
+        publish(event, peerID, 0, 0, null, tags, null);
+    }
+
+    /**
+     * Sets what happens to messages when the ring buffer is full.
+     * @param policy New overflow policy.
+     */
+    public static void setOverflowPolicy(OverflowPolicy policy) {
+        overflowPolicy = policy;
+    }
+
+    /**
+     * Sets the minimum level of the events that are logged.
+     * @param level New log level.
+     */
+    public static void setLevel(LogLevel level) {
+        Logger.level = level;
+    }
 
-        // Print to console
-        System.out.println(logMessage);
+    /**
+     * Sets how many events of a category are logged.
+     * @param category Category to configure.
+     * @param sampleRate 0 to switch the category off, N to log every N-th event.
+     */
+    public static void setSampleRate(LogCategory category, int sampleRate) {
+        if (sampleRate < 0) {
+            throw new IllegalArgumentException("Sample rate must not be negative: " + sampleRate);
+        }
+        sampleRates.set(category.ordinal(), sampleRate);
+    }
 
-        // Append the message to the log file
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(LOG_FILE, true))) {
-            writer.write(logMessage);
-            writer.newLine();
-        } catch (IOException e) {
-            System.err.println("Error writing to log file: " + e.getMessage());
+    /**
+     * Changes a setting with the same keys and values as the {@code logger.*} system properties:
+     * {@code level}, {@code overflow} or the name of a category.
+     * @param key Setting to change, e.g. "discovery".
+     * @param value New value, e.g. "off" or "10".
+     */
+    public static void configure(String key, String value) {
+        key = key.toLowerCase();
+        switch (key) {
+            case "level" -> setLevel(LogLevel.valueOf(value.toUpperCase()));
+            case "overflow" -> setOverflowPolicy(OverflowPolicy.valueOf(value.toUpperCase()));
+            default -> setSampleRate(LogCategory.valueOf(key.toUpperCase()), parseSampleRate(value));
         }
+    }
 
+    /**
+     * Waits until all messages published so far are written.
+     * @param timeout Maximum time to wait in ms.
+     */
+    public static void flush(long timeout) {
+        lock.lock();
+        try {
+            long target = tail;
+            long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+            while (written < target && nanos > 0) {
+                nanos = drained.awaitNanos(nanos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
     }
 
-    public synchronized static void logStats(String message) {
+    /**
+     * Checks the level and the sampling of the event's category.
+     * @return True if the event is to be logged.
+     */
+    static boolean isLoggable(LogEvent event) {
+        if (event.getLevel().compareTo(level) < 0) {
+            return false;
+        }
+        int category = event.getCategory().ordinal();
+        int sampleRate = sampleRates.get(category);
+        if (sampleRate <= 1) {
+            return sampleRate == 1;
+        }
+        return sampleCounters.getAndIncrement(category) % sampleRate == 0;
+    }
 
-        // Print to console
-        System.out.println(message);
+    private static void publish(LogEvent event, int peerID, int otherID, int amount, Product product, int[] tags, String text) {
+        if (!isLoggable(event)) {
+            return;
+        }
+        long time = System.currentTimeMillis();
+        lock.lock();
+        try {
+            if (tail - head == ring.length && !awaitSlot()) {
+                dropped++;
+                return;
+            }
+            ring[(int) (tail & mask)].set(event, time, peerID, otherID, amount, product, tags, text);
+            tail++;
+            if (writerWaiting) {
+                notEmpty.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
 
-        // Append the message to the log file
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(STATS_FILE, true))) {
-            writer.write(message);
-            writer.newLine();
-        } catch (IOException e) {
-            System.err.println("Error writing to log file: " + e.getMessage());
+    /**
+     * Applies the overflow policy to a message that found the ring buffer full. Must hold the lock.
+     * @return True if a slot is free now, false if the message has to be dropped.
+     */
+    private static boolean awaitSlot() {
+        OverflowPolicy policy = overflowPolicy;
+        if (policy == OverflowPolicy.DROP || (policy == OverflowPolicy.SAMPLE && overflowCount++ % SAMPLE_RATE != 0)) {
+            return false;
         }
+        while (tail - head == ring.length) {
+            notFull.awaitUninterruptibly();
+        }
+        return true;
+    }
+
+    private static void writeLoop() {
+        LogRecord droppedRecord = new LogRecord();
+        long failedMessages = 0;
+
+        while (true) {
+            long from;
+            long to;
+            long droppedMessages;
+            lock.lock();
+            try {
+                while (head == tail) {
+                    writerWaiting = true;
+                    notEmpty.awaitUninterruptibly();
+                    writerWaiting = false;
+                }
+                from = head;
+                to = tail;
+                droppedMessages = dropped;
+                dropped = 0;
+            } finally {
+                lock.unlock();
+            }
+
+            // slots between from and to belong to the writer until head moves past them
+            for (long i = from; i < to; i++) {
+                LogRecord record = ring[(int) (i & mask)];
+                failedMessages += write(record);
+                record.clear();
+            }
+            if (droppedMessages > 0) {
+                droppedRecord.set(LogEvent.TEXT, System.currentTimeMillis(), 0, 0, 0, null, null,
+                        droppedMessages + " log message(s) dropped.");
+                failedMessages += write(droppedRecord);
+            }
+            if (failedMessages > 0) {
+                droppedRecord.set(LogEvent.TEXT, System.currentTimeMillis(), 0, 0, 0, null, null,
+                        failedMessages + " log message(s) could not be written.");
+                if (write(droppedRecord) == 0) {
+                    failedMessages = 0;
+                }
+            }
 
+            lock.lock();
+            try {
+                head = to;
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            for (LogSink sink : sinks) {
+                try {
+                    sink.flush();
+                } catch (RuntimeException e) {
+                    failedMessages++;
+                }
+            }
+
+            lock.lock();
+            try {
+                written = to;
+                drained.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Hands a record to every sink. A sink that fails does not keep the others from writing it.
+     * @return Number of sinks that failed to write the record.
+     */
+    private static int write(LogRecord record) {
+        int failed = 0;
+        for (LogSink sink : sinks) {
+            try {
+                sink.write(record);
+            } catch (RuntimeException e) {
+                failed++;
+            }
+        }
+        return failed;
+    }
+
+    private static int parseSampleRate(String value) {
+        return switch (value.trim().toLowerCase()) {
+            case "on" -> 1;
+            case "off" -> 0;
+            default -> Integer.parseInt(value.trim());
+        };
+    }
+
+    private static LogSink[] createSinks(String names) {
+        List<LogSink> sinks = new ArrayList<>();
+        for (String name : names.split(",")) {
+            switch (name.trim().toLowerCase()) {
+                case "text" -> sinks.add(new TextLogSink());
+                case "binary" -> sinks.add(new BinaryLogSink());
+                default -> throw new IllegalArgumentException("Unknown log sink: " + name);
+            }
+        }
+        return sinks.toArray(new LogSink[0]);
+    }
+
+    private static LogRecord[] createRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        LogRecord[] entries = new LogRecord[size];
+        for (int i = 0; i < size; i++) {
+            entries[i] = new LogRecord();
+        }
+        return entries;
     }
 }
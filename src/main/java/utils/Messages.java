@@ -2,17 +2,13 @@ package utils;
 
 import product.Product;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 
 /**
  * This class contains all the messages for the logging.
  */
 public class Messages {
 
-    private static List<Double> meanDeltas = new ArrayList<>();
-
     public static String getElectionDoneMessage(int coordinatorID) {
         return "Election done. New coordinator is peer " + coordinatorID + ".";
     }
@@ -21,6 +17,14 @@ public class Messages {
         return "Peer " + peerID + " is doing election. Tags: " + Arrays.toString(newTags) + ".";
     }
 
+    public static String getElectionDiscardedMessage(int peerID, int epoch) {
+        return "Peer " + peerID + " discards election of epoch " + epoch + ".";
+    }
+
+    public static String getCoordinatorSuspectedMessage(int peerID, int coordinatorID) {
+        return "Peer " + peerID + " has no heartbeat from coordinator " + coordinatorID + ", starting election.";
+    }
+
     public static String getPeerDoesNotRespondMessage(int peerID) {
         return "Peer " + peerID + " doesn't respond.";
     }
@@ -77,8 +81,12 @@ public class Messages {
         return "Peer " + peerID + " is new coordinator. Discarding buy.";
     }
 
-    public static String getStatisticsMessage(int peerID, List<Long> deltas) {
-        double delta = deltas.stream().mapToLong(Long::longValue).average().orElse(0);
-        return "Peer " + peerID + " has an average response time of " + delta + ". Deltas: " + deltas;
+    public static String getStatisticsMessage(int peerID, LatencyHistogram.Snapshot snapshot) {
+        return "Peer " + peerID + " response time [us]: count=" + snapshot.getTotalCount()
+                + " p50=" + snapshot.getValueAtPercentile(50)
+                + " p90=" + snapshot.getValueAtPercentile(90)
+                + " p99=" + snapshot.getValueAtPercentile(99)
+                + " p99.9=" + snapshot.getValueAtPercentile(99.9)
+                + " max=" + snapshot.getMaxValue();
     }
 }
@@ -0,0 +1,110 @@
+package utils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Threads of the peers of this process. By default every task runs on its own virtual thread, so a task
+ * blocked on a remote call does not hold a thread other tasks are waiting for. With
+ * {@code -Dpeer.executor=platform} every executor is a fixed pool of {@link #POOL_SIZE} platform threads.
+ * <p>
+ * All timers of the process share one scheduler thread. The scheduler only starts the timed tasks, they run
+ * on an executor like all other tasks, so a slow timed task does not delay the others.
+ */
+public final class PeerExecutors {
+
+    public static final boolean VIRTUAL = !"platform".equals(System.getProperty("peer.executor", "virtual"));
+    public static final int POOL_SIZE = 10;
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final ExecutorService TIMED_TASKS = newExecutor("timer");
+
+    private PeerExecutors() {}
+
+    /**
+     * Creates an executor for the tasks of a peer or a transport. Its threads do not keep the process alive.
+     * @param name Name of the threads.
+     * @return New executor.
+     */
+    public static ExecutorService newExecutor(String name) {
+        if (VIRTUAL) {
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+        }
+        ThreadFactory factory = Thread.ofPlatform().name(name + "-", 0).daemon().factory();
+        return Executors.newFixedThreadPool(POOL_SIZE, factory);
+    }
+
+    /**
+     * Runs a task once after a delay.
+     */
+    public static ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        return SCHEDULER.schedule(() -> TIMED_TASKS.execute(task), delay, unit);
+    }
+
+    /**
+     * Runs a task periodically, see {@link ScheduledExecutorService#scheduleAtFixedRate}. A tick that comes while
+     * the previous run has not finished yet is skipped, so runs never overlap. As there, an exception thrown by the
+     * task suppresses all later runs, the exception is logged.
+     */
+    public static ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        PeriodicTask periodicTask = new PeriodicTask(task);
+        periodicTask.setFuture(SCHEDULER.scheduleAtFixedRate(periodicTask, initialDelay, period, unit));
+        return periodicTask.future;
+    }
+
+    /**
+     * Starts a periodic task on the timed tasks executor unless its previous run is still going.
+     */
+    private static final class PeriodicTask implements Runnable {
+
+        private final Runnable task;
+        private final AtomicBoolean running = new AtomicBoolean();
+        // guarded by this, a run can fail before the scheduler returned the future
+        private ScheduledFuture<?> future;
+        private boolean failed;
+
+        private PeriodicTask(Runnable task) {
+            this.task = task;
+        }
+
+        private synchronized void setFuture(ScheduledFuture<?> future) {
+            this.future = future;
+            if (failed) {
+                future.cancel(false);
+            }
+        }
+
+        private synchronized void fail() {
+            failed = true;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (!running.compareAndSet(false, true)) {
+                return;
+            }
+            TIMED_TASKS.execute(() -> {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    Logger.log("Periodic task failed, cancelling it: " + e);
+                    fail();
+                } finally {
+                    running.set(false);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package utils;
+
+import product.Product;
+import utils.collections.IntArrayDeque;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Mutations of the trader state that the coordinator still has to stream to its standby peers, in sequence
+ * order. The trader state store appends every mutation together with its trader log record, and the coordinator
+ * drains the log and sends the mutations as one {@link Batch}.
+ */
+public class ReplicationLog {
+
+    private final List<Product> products = new ArrayList<>();
+    private final IntArrayDeque amounts = new IntArrayDeque();
+    private final IntArrayDeque sellerIDs = new IntArrayDeque();
+    private long sequence; // sequence number of the last mutation appended
+
+    /**
+     * Appends a mutation.
+     * @param sequence Sequence number of the mutation, one higher than the one appended before.
+     * @param product Product offered or taken.
+     * @param amount Amount offered or taken.
+     * @param sellerID ID of the seller of an offer, -1 for a take.
+     * @return True if the log was empty before, so the mutations have to be sent.
+     */
+    public synchronized boolean append(long sequence, Product product, int amount, int sellerID) {
+        boolean wasEmpty = products.isEmpty();
+        products.add(product);
+        amounts.addLast(amount);
+        sellerIDs.addLast(sellerID);
+        this.sequence = sequence;
+        return wasEmpty;
+    }
+
+    /**
+     * Removes all mutations from the log.
+     * @return The mutations in sequence order, or null if the log is empty.
+     */
+    public synchronized Batch drain() {
+        if (products.isEmpty()) {
+            return null;
+        }
+        Batch batch = new Batch(false, sequence, products.toArray(new Product[0]), amounts.toArray(), sellerIDs.toArray());
+        products.clear();
+        amounts.clear();
+        sellerIDs.clear();
+        return batch;
+    }
+
+    /**
+     * Mutations sent to a standby at once. A reset batch replaces the whole state of the standby: it holds one
+     * offer for every run of every seller queue, in FIFO order.
+     */
+    public static class Batch {
+
+        private final boolean reset;
+        private final long sequence;
+        private final Product[] products;
+        private final int[] amounts;
+        private final int[] sellerIDs;
+
+        public Batch(boolean reset, long sequence, Product[] products, int[] amounts, int[] sellerIDs) {
+            this.reset = reset;
+            this.sequence = sequence;
+            this.products = products;
+            this.amounts = amounts;
+            this.sellerIDs = sellerIDs;
+        }
+
+        /**
+         * Creates a reset batch holding the whole trader state.
+         * @param traderState State to send. Must not change while the batch is created.
+         * @return Reset batch.
+         */
+        static Batch of(TraderState traderState) {
+            List<Product> products = new ArrayList<>();
+            IntArrayDeque amounts = new IntArrayDeque();
+            IntArrayDeque sellerIDs = new IntArrayDeque();
+            traderState.getSellerQueues().forEach((product, queue) -> queue.forEachRun((sellerID, units) -> {
+                products.add(product);
+                amounts.addLast(units);
+                sellerIDs.addLast(sellerID);
+            }));
+            return new Batch(true, traderState.getSequence(), products.toArray(new Product[0]), amounts.toArray(), sellerIDs.toArray());
+        }
+
+        /**
+         * @return True if the batch replaces the whole state of the standby.
+         */
+        public boolean isReset() {
+            return reset;
+        }
+
+        /**
+         * @return Sequence number of the last mutation in the batch, or of the state of a reset batch.
+         */
+        public long getSequence() {
+            return sequence;
+        }
+
+        public Product[] getProducts() {
+            return products;
+        }
+
+        public int[] getAmounts() {
+            return amounts;
+        }
+
+        /**
+         * @return ID of the seller of each offer, -1 for a take.
+         */
+        public int[] getSellerIDs() {
+            return sellerIDs;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package utils;
+
+import utils.collections.IntArrayDeque;
+
+/**
+ * FIFO queue of the units the trader holds for one product. Consecutive units deposited by the same seller are
+ * stored as one run of (seller ID, unit count), so adding and taking units costs O(runs) instead of O(units).
+ * Runs live in a primitive ring buffer. Taken runs are only overwritten, never retained, and the buffer
+ * shrinks again once most of its capacity is unused, so a long-lived coordinator keeps a flat heap.
+ */
+public class SellerQueue {
+
+    /**
+     * Receives the runs of a queue in FIFO order.
+     */
+    @FunctionalInterface
+    public interface RunConsumer {
+        void accept(int sellerID, int units);
+    }
+
+    private final IntArrayDeque runs; // interleaved (seller ID, units) pairs
+    private int size;                 // total amount of units in all runs
+
+    public SellerQueue() {
+        this.runs = new IntArrayDeque();
+        this.size = 0;
+    }
+
+    /**
+     * @return Total amount of units in the queue.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Amount of runs in the queue.
+     */
+    public int runCount() {
+        return runs.size() / 2;
+    }
+
+    /**
+     * Appends units of a seller to the end of the queue.
+     * @param sellerID ID of the seller.
+     * @param amount Amount of units to append.
+     */
+    public void add(int sellerID, int amount) {
+        if (amount <= 0) {
+            return;
+        }
+        size += amount;
+
+        int tail = runs.size() - 2;
+        if (tail >= 0 && runs.get(tail) == sellerID) {
+            runs.set(tail + 1, runs.get(tail + 1) + amount);
+        } else {
+            runs.addLast(sellerID);
+            runs.addLast(amount);
+        }
+    }
+
+    /**
+     * Removes units from the front of the queue and adds them to the payouts of their sellers.
+     * @param amount Amount of units to remove.
+     * @param payouts Receives (seller ID, units) pairs, one pair per seller.
+     * @return False if not enough units are queued. Nothing is removed in that case.
+     */
+    public boolean take(int amount, IntArrayDeque payouts) {
+        if (amount <= 0 || amount > size) {
+            return false;
+        }
+
+        size -= amount;
+        while (amount > 0) {
+            int sellerID = runs.get(0);
+            int units = runs.get(1);
+            int taken = Math.min(units, amount);
+            addPayout(payouts, sellerID, taken);
+            amount -= taken;
+            if (taken == units) {
+                runs.removeFirst();
+                runs.removeFirst();
+            } else {
+                runs.set(1, units - taken);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Passes all runs to the consumer in FIFO order.
+     * @param consumer Consumer of the runs.
+     */
+    public void forEachRun(RunConsumer consumer) {
+        for (int i = 0; i < runs.size(); i += 2) {
+            consumer.accept(runs.get(i), runs.get(i + 1));
+        }
+    }
+
+    /**
+     * @return Copy of this queue that does not share any runs with it.
+     */
+    public SellerQueue copy() {
+        SellerQueue copy = new SellerQueue();
+        forEachRun(copy::add);
+        return copy;
+    }
+
+    /**
+     * @return Amount of runs the ring buffer can hold without growing.
+     */
+    int capacity() {
+        return runs.capacity() / 2;
+    }
+
+    /**
+     * Adds units to the payout of a seller, appending a new pair if the seller has none yet.
+     */
+    private static void addPayout(IntArrayDeque payouts, int sellerID, int units) {
+        for (int i = 0; i < payouts.size(); i += 2) {
+            if (payouts.get(i) == sellerID) {
+                payouts.set(i + 1, payouts.get(i + 1) + units);
+                return;
+            }
+        }
+        payouts.addLast(sellerID);
+        payouts.addLast(units);
+    }
+}
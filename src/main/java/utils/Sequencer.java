@@ -0,0 +1,121 @@
+package utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Ring buffer of pre-allocated entries that many threads publish into and one dedicated thread handles in
+ * publication order. A publisher claims the next sequence number, fills the entry of that slot and marks the
+ * slot as published. The handler thread waits for the next sequence number to be published, handles the entry
+ * and frees the slot. Publishers yield while the ring is full. Neither side takes a lock.
+ * <p>
+ * The handler thread spins shortly when the ring is empty and then parks until the next entry is published.
+ * @param <E> Type of the entries.
+ */
+public class Sequencer<E> {
+
+    private static final int SPINS = 100;
+
+    private final Object[] entries;
+    private final int mask;
+    private final AtomicLongArray published; // sequence number last published in each slot
+    private final AtomicLong claimed = new AtomicLong(-1); // last sequence number claimed by a publisher
+    private final AtomicLong handled = new AtomicLong(-1); // last sequence number handled
+    private final Consumer<E> handler;
+    private final Thread thread;
+    private volatile boolean parked;
+
+    /**
+     * Creates the sequencer and starts its handler thread.
+     * @param capacity Number of slots, a power of two.
+     * @param factory Creates the entries.
+     * @param handler Handles the published entries. Exceptions are logged and do not stop the sequencer.
+     * @param name Name of the handler thread.
+     */
+    public Sequencer(int capacity, Supplier<E> factory, Consumer<E> handler, String name) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.entries = new Object[capacity];
+        this.mask = capacity - 1;
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            entries[i] = factory.get();
+            published.set(i, -1);
+        }
+        this.handler = handler;
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Claims the next slot, fills its entry and publishes it to the handler thread. Waits while the ring is full.
+     * @param translator Fills the entry. Must not keep a reference to it.
+     */
+    @SuppressWarnings("unchecked")
+    public void publish(Consumer<E> translator) {
+        long sequence = claimed.incrementAndGet();
+        while (sequence - handled.get() > entries.length) {
+            Thread.yield(); // ring full, let the handler thread catch up
+        }
+
+        int slot = (int) (sequence & mask);
+        translator.accept((E) entries[slot]);
+        published.set(slot, sequence);
+        if (parked) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * @return True if called on the handler thread.
+     */
+    public boolean isHandlerThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * @return Number of entries published but not handled yet.
+     */
+    public long backlog() {
+        return claimed.get() - handled.get();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void run() {
+        long next = 0;
+        while (true) {
+            int slot = (int) (next & mask);
+            if (!awaitPublished(slot, next)) {
+                continue;
+            }
+            try {
+                handler.accept((E) entries[slot]);
+            } catch (RuntimeException e) {
+                System.err.println("Error in sequencer " + thread.getName() + ": " + e);
+            }
+            handled.set(next);
+            next++;
+        }
+    }
+
+    // spins shortly and then parks until the sequence number is published in the slot
+    private boolean awaitPublished(int slot, long sequence) {
+        for (int i = 0; i < SPINS; i++) {
+            if (published.get(slot) == sequence) {
+                return true;
+            }
+            Thread.onSpinWait();
+        }
+        parked = true;
+        if (published.get(slot) != sequence) {
+            LockSupport.park(this);
+        }
+        parked = false;
+        return published.get(slot) == sequence;
+    }
+}
@@ -0,0 +1,71 @@
+package utils;
+
+import utils.collections.IntArrayDeque;
+
+import java.util.Arrays;
+
+/**
+ * Money the coordinator owes to the sellers for the units it sold. Trades credit the sellers while holding the
+ * trader lock, and the ledger is settled later with one payment per seller for all trades since the last
+ * settlement, so no remote call is made inside the trade.
+ */
+public class SettlementLedger {
+
+    private int[] balances;             // money owed, indexed by seller ID
+    private final IntArrayDeque sellers; // seller IDs with a balance, in order of their first credit
+
+    public SettlementLedger() {
+        this.balances = new int[8];
+        this.sellers = new IntArrayDeque();
+    }
+
+    /**
+     * Adds money to the balance of a seller.
+     * @param sellerID ID of the seller.
+     * @param money Money owed for the units sold.
+     * @return True if the ledger was settled before, so a settlement has to be scheduled.
+     */
+    public synchronized boolean credit(int sellerID, int money) {
+        if (money <= 0) {
+            return false;
+        }
+        if (sellerID >= balances.length) {
+            balances = Arrays.copyOf(balances, Math.max(balances.length * 2, sellerID + 1));
+        }
+
+        boolean wasSettled = sellers.isEmpty();
+        if (balances[sellerID] == 0) {
+            sellers.addLast(sellerID);
+        }
+        balances[sellerID] += money;
+        return wasSettled;
+    }
+
+    /**
+     * Takes all balances out of the ledger.
+     * @param payments Receives (seller ID, money) pairs, one pair per seller.
+     */
+    public synchronized void settle(IntArrayDeque payments) {
+        while (!sellers.isEmpty()) {
+            int sellerID = sellers.removeFirst();
+            payments.addLast(sellerID);
+            payments.addLast(balances[sellerID]);
+            balances[sellerID] = 0;
+        }
+    }
+
+    /**
+     * @param sellerID ID of the seller.
+     * @return Money currently owed to the seller.
+     */
+    public synchronized int balance(int sellerID) {
+        return sellerID < balances.length ? balances[sellerID] : 0;
+    }
+
+    /**
+     * @return True if no money is owed.
+     */
+    public synchronized boolean isSettled() {
+        return sellers.isEmpty();
+    }
+}
@@ -0,0 +1,76 @@
+package utils;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Writes the human-readable log: timestamped messages to the console and the log file, statistics to the
+ * console and the stats file. Files are opened on first use and kept open.
+ */
+public class TextLogSink implements LogSink {
+
+    private static final Path LOG_FILE = Paths.get("trading_post_log.txt"); // Path to the log file
+    private static final Path STATS_FILE = Paths.get("trading_post_stats.txt");
+
+    // Date and time formatter
+    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss.SSS");
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    private final PrintStream console = System.out;
+    private final StringBuilder logBatch = new StringBuilder();
+    private final StringBuilder statsBatch = new StringBuilder();
+    private FileChannel logChannel;
+    private FileChannel statsChannel;
+
+    @Override
+    public void write(LogRecord record) {
+        if (record.getEvent() == LogEvent.STATISTICS) {
+            statsBatch.append(record.format()).append(System.lineSeparator());
+        } else {
+            logBatch.append(formatter.format(LocalDateTime.ofInstant(Instant.ofEpochMilli(record.getTime()), ZONE)))
+                    .append(' ').append(record.format()).append(System.lineSeparator());
+        }
+    }
+
+    @Override
+    public void flush() {
+        console.print(logBatch);
+        console.print(statsBatch);
+        console.flush();
+        try {
+            if (!logBatch.isEmpty()) {
+                if (logChannel == null) {
+                    logChannel = FileChannel.open(LOG_FILE, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                }
+                write(logChannel, logBatch);
+            }
+            if (!statsBatch.isEmpty()) {
+                if (statsChannel == null) {
+                    statsChannel = FileChannel.open(STATS_FILE, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                }
+                write(statsChannel, statsBatch);
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing to log file: " + e.getMessage());
+        }
+        logBatch.setLength(0);
+        statsBatch.setLength(0);
+    }
+
+    private static void write(FileChannel channel, StringBuilder batch) throws IOException {
+        ByteBuffer buffer = StandardCharsets.UTF_8.encode(batch.toString());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package utils;
+
+import product.Product;
+import utils.collections.IntArrayDeque;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log of the trader stock mutations. Every record is framed by its payload length
+ * and a CRC32 checksum of the payload, so a torn or corrupted record at the end of the log is detected and
+ * replay stops there. Records carry a sequence number. Replay skips everything already contained in the
+ * snapshot, so a crash between writing a snapshot and removing the compacted log is harmless.
+ * <p>
+ * Records are left to the page cache of the OS by default, so a power failure can lose the last ones. With
+ * {@code -Dpeer.walSync=1} every append is forced to the disk, with {@code -Dpeer.walSync=<n>} every n-th append
+ * forces the records since the last one in a group commit.
+ */
+public class TraderLog {
+
+    public static final int SYNC_EVERY = Integer.getInteger("peer.walSync", 0); // appends per force, 0 never forces
+
+    public static final Path FILE_PATH = filePath(0);
+
+    private static final byte OFFER = 1;
+    private static final byte TAKE = 2;
+
+    // sequence number, type, product, amount, seller ID
+    private static final int PAYLOAD_SIZE = Long.BYTES + 2 * Byte.BYTES + 2 * Integer.BYTES;
+    // length, checksum, payload
+    private static final int RECORD_SIZE = 2 * Integer.BYTES + PAYLOAD_SIZE;
+
+    private static final Product[] PRODUCTS = Product.values();
+
+    private final int partition;
+    private final Path path;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+    private final CRC32 crc = new CRC32();
+
+    private FileChannel channel;
+    private int size; // records appended since the log was opened
+    private int unsynced; // records appended since the last force
+    private int segment; // number the log is moved to by the next rotation
+
+    private TraderLog(int partition) throws IOException {
+        this.partition = partition;
+        this.path = filePath(partition);
+        this.channel = openChannel();
+        this.size = 0;
+        this.unsynced = 0;
+        List<Path> segments = compactingFilePaths(partition);
+        this.segment = segments.isEmpty() ? 0 : segmentOf(partition, segments.get(segments.size() - 1)) + 1;
+    }
+
+    /**
+     * Opens the log for appending.
+     * @param partition Product partition of the trader.
+     * @return The opened log.
+     */
+    public static TraderLog open(int partition) {
+        try {
+            return new TraderLog(partition);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Appends an offer record.
+     * @param sequence Sequence number of the mutation.
+     * @param product Product added to stock.
+     * @param amount Amount added to stock.
+     * @param sellerID ID of the seller.
+     */
+    public void appendOffer(long sequence, Product product, int amount, int sellerID) {
+        append(sequence, OFFER, product, amount, sellerID);
+    }
+
+    /**
+     * Appends a take record.
+     * @param sequence Sequence number of the mutation.
+     * @param product Product taken out of stock.
+     * @param amount Amount taken out of stock.
+     */
+    public void appendTake(long sequence, Product product, int amount) {
+        append(sequence, TAKE, product, amount, -1);
+    }
+
+    /**
+     * @return Number of records appended since the log was opened or rotated.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Moves the current log aside for compaction and starts a new, empty log. The log is renamed to the next
+     * compacting segment, so nothing is copied. If the last snapshot failed, the segments kept from that compaction
+     * stay in place and are replayed before this one.
+     * @return Segment the log was moved to. Delete it with {@link #deleteCompacted(int, int)} once the snapshot is
+     *         written.
+     */
+    public int rotate() {
+        try {
+            sync();
+            channel.close();
+            Files.move(path, compactingFilePath(partition, segment));
+            channel = openChannel();
+            size = 0;
+            return segment++;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Forces the records not forced yet and closes the log file.
+     */
+    public void close() {
+        try {
+            sync();
+        } catch (IOException e) {
+            Logger.log("Trader log could not be forced to the disk: " + e);
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {}
+    }
+
+    // static functions
+
+    /**
+     * @param partition Product partition of the trader. Partition 0 keeps the plain file name.
+     * @return Log file of the partition.
+     */
+    public static Path filePath(int partition) {
+        return Paths.get(partition == 0 ? "trader_state.wal" : "trader_state." + partition + ".wal");
+    }
+
+    /**
+     * @param partition Product partition of the trader.
+     * @param segment Number of the segment.
+     * @return File the log of the partition is moved to for compaction.
+     */
+    public static Path compactingFilePath(int partition, int segment) {
+        return Paths.get(filePath(partition) + ".old." + segment);
+    }
+
+    /**
+     * @param partition Product partition of the trader.
+     * @return Compacting segments of the partition that are still on disk, oldest first.
+     */
+    public static List<Path> compactingFilePaths(int partition) {
+        Path directory = filePath(partition).toAbsolutePath().getParent();
+        String prefix = filePath(partition) + ".old.";
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith(prefix))
+                    .filter(file -> segmentOf(partition, file) >= 0)
+                    .sorted((a, b) -> Integer.compare(segmentOf(partition, a), segmentOf(partition, b)))
+                    .toList();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Replays the compacted segments and the current log on top of a snapshot.
+     * Records with a sequence number not greater than the snapshot sequence are skipped.
+     * @param partition Product partition of the trader.
+     * @param traderState Trader state read from the snapshot.
+     * @return False if the log was rotated or compacted meanwhile, records may be missing then and the snapshot
+     *         has to be read again.
+     */
+    public static boolean replay(int partition, TraderState traderState) {
+        List<Path> segments = compactingFilePaths(partition);
+        for (Path segment : segments) {
+            replay(segment, traderState);
+        }
+        replay(filePath(partition), traderState);
+        return segments.equals(compactingFilePaths(partition));
+    }
+
+    /**
+     * Deletes all segments that were moved aside by {@link #rotate()}.
+     * @param partition Product partition of the trader.
+     */
+    public static void deleteCompacted(int partition) {
+        deleteCompacted(partition, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Deletes the segments contained in a snapshot. Segments rotated after the snapshot was copied are kept.
+     * @param partition Product partition of the trader.
+     * @param segment Segment returned by the rotation the snapshot was copied at.
+     */
+    public static void deleteCompacted(int partition, int segment) {
+        for (Path path : compactingFilePaths(partition)) {
+            if (segmentOf(partition, path) <= segment) {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException ignored) {}
+            }
+        }
+    }
+
+    /**
+     * Deletes all log files.
+     * @param partition Product partition of the trader.
+     */
+    public static void clear(int partition) {
+        deleteCompacted(partition);
+        try {
+            Files.deleteIfExists(filePath(partition));
+        } catch (IOException ignored) {}
+    }
+
+    private void append(long sequence, byte type, Product product, int amount, int sellerID) {
+        record.clear();
+        record.position(2 * Integer.BYTES);
+        record.putLong(sequence).put(type).put((byte) product.ordinal()).putInt(amount).putInt(sellerID);
+
+        crc.reset();
+        crc.update(record.array(), 2 * Integer.BYTES, PAYLOAD_SIZE);
+        record.putInt(0, PAYLOAD_SIZE).putInt(Integer.BYTES, (int) crc.getValue());
+
+        record.flip();
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+            size++;
+            unsynced++;
+            if (SYNC_EVERY > 0 && unsynced >= SYNC_EVERY) {
+                sync();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Forces the records appended since the last force to the disk, if forcing is turned on.
+     */
+    private void sync() throws IOException {
+        if (SYNC_EVERY > 0 && unsynced > 0) {
+            channel.force(false);
+        }
+        unsynced = 0;
+    }
+
+    private FileChannel openChannel() throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * @return Number of a compacting segment of the partition, or -1 if the file is no segment.
+     */
+    private static int segmentOf(int partition, Path path) {
+        String prefix = filePath(partition) + ".old.";
+        try {
+            return Integer.parseInt(path.getFileName().toString().substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void replay(Path path, TraderState traderState) {
+        ByteBuffer buffer;
+        try {
+            if (!Files.exists(path)) {
+                return;
+            }
+            buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        } catch (IOException e) {
+            return;
+        }
+
+        CRC32 crc = new CRC32();
+        IntArrayDeque payouts = new IntArrayDeque(); // sellers were paid when the record was written
+        while (buffer.remaining() >= 2 * Integer.BYTES) {
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length != PAYLOAD_SIZE || buffer.remaining() < length) {
+                return; // torn record at the end of the log
+            }
+            crc.reset();
+            crc.update(buffer.array(), buffer.position(), length);
+            if ((int) crc.getValue() != checksum) {
+                return; // corrupted record
+            }
+
+            long sequence = buffer.getLong();
+            byte type = buffer.get();
+            Product product = PRODUCTS[buffer.get()];
+            int amount = buffer.getInt();
+            int sellerID = buffer.getInt();
+            if (sequence <= traderState.getSequence()) {
+                continue; // already contained in the snapshot
+            }
+
+            if (type == OFFER) {
+                traderState.putIntoStock(product, amount, sellerID);
+            } else if (type == TAKE) {
+                payouts.clear();
+                traderState.takeOutOfStock(product, amount, payouts);
+            }
+            traderState.setSequence(sequence);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package utils;
+
+import product.Product;
+import utils.collections.IntArrayDeque;
+
+/**
+ * Warm copy of the trader state held by a standby peer. The coordinator first sends a reset batch with its whole
+ * state and then streams its mutations in sequence order. When the standby becomes coordinator, it takes over
+ * this state without reading the trader state from disk.
+ */
+public class TraderReplica {
+
+    private final int primaryID;
+    private TraderState traderState;
+
+    /**
+     * @param primaryID ID of the coordinator this replica copies.
+     */
+    public TraderReplica(int primaryID) {
+        this.primaryID = primaryID;
+    }
+
+    public int getPrimaryID() {
+        return primaryID;
+    }
+
+    /**
+     * Applies a batch of the coordinator. Mutations the replica already contains are skipped.
+     * @param reset True if the batch replaces the whole state.
+     * @param sequence Sequence number of the last mutation in the batch, or of the state of a reset batch.
+     * @param products Product of each mutation.
+     * @param amounts Amount of each mutation.
+     * @param sellerIDs ID of the seller of each offer, -1 for a take.
+     * @return False if mutations between the replica and the batch are missing, so a reset batch is needed.
+     */
+    public synchronized boolean apply(boolean reset, long sequence, Product[] products, int[] amounts, int[] sellerIDs) {
+        int first = 0;
+        if (reset) {
+            traderState = new TraderState(TraderStateFormat.emptyQueues(), sequence);
+        } else {
+            if (traderState == null) {
+                return false;
+            }
+            long firstSequence = sequence - products.length + 1;
+            if (firstSequence > traderState.getSequence() + 1) {
+                return false;
+            }
+            first = (int) Math.max(0, traderState.getSequence() + 1 - firstSequence);
+            traderState.setSequence(Math.max(traderState.getSequence(), sequence));
+        }
+
+        IntArrayDeque payouts = new IntArrayDeque(); // the coordinator pays the sellers
+        for (int i = first; i < products.length; i++) {
+            if (sellerIDs[i] >= 0) {
+                traderState.putIntoStock(products[i], amounts[i], sellerIDs[i]);
+            } else {
+                traderState.takeOutOfStock(products[i], amounts[i], payouts);
+                payouts.clear();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return True once the replica has received the state of the coordinator.
+     */
+    public synchronized boolean isInitialized() {
+        return traderState != null;
+    }
+
+    synchronized TraderState getTraderState() {
+        return traderState;
+    }
+}
@@ -1,18 +1,16 @@
 package utils;
 
 import product.Product;
+import utils.collections.IntArrayDeque;
+import utils.collections.ProductTable;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.nio.file.StandardCopyOption;
 
 /**
  * Contains all the logic for managing the items offered by the trader,
@@ -20,10 +18,14 @@ import java.util.Map;
 public class TraderState {
 
     // Allows trader to keep track of sellers and deposited items
-    private final Map<Product, List<Integer>> sellerQueues;
+    private final ProductTable<SellerQueue> sellerQueues;
 
-    private TraderState(Map<Product, List<Integer>> sellerQueues) {
+    // sequence number of the last trader log record contained in this state
+    private long sequence;
+
+    TraderState(ProductTable<SellerQueue> sellerQueues, long sequence) {
         this.sellerQueues = sellerQueues;
+        this.sequence = sequence;
     }
 
     /**
@@ -33,32 +35,19 @@ public class TraderState {
      * @return Product available or not.
      */
     public boolean productAvailable(Product product, int amount) {
-        List<Integer> stock = this.sellerQueues.get(product);
-        return stock != null && stock.size() >= amount;
+        return this.sellerQueues.get(product).size() >= amount;
     }
 
     /**
-     * Removes specified amount of product from stock and returns list of seller IDs corresponding to these units.
+     * Removes specified amount of product from stock and adds how many of these units belong to each seller to the
+     * payouts. Nothing is taken out if the amount is not available.
      * @param product Product to take out.
      * @param amount Amount to take out.
-     * @return List of sellers to pay.
+     * @param payouts Receives (seller ID, units) pairs of the sellers to pay, one pair per seller in FIFO order.
+     * @return Product taken out of stock or not.
      */
-    public List<Integer> takeOutOfStock(Product product, int amount) {
-        if (!productAvailable(product, amount)) {
-            return List.of();
-        }
-
-        List<Integer> queue = sellerQueues.get(product);
-        if (queue == null) {
-            return List.of();
-        }
-
-        List<Integer> first = queue.subList(0, amount); // sellers to pay
-        List<Integer> last = queue.subList(amount, queue.size()); // remaining sellers
-
-        sellerQueues.put(product, last);
-
-        return first;
+    public boolean takeOutOfStock(Product product, int amount, IntArrayDeque payouts) {
+        return sellerQueues.get(product).take(amount, payouts);
     }
 
     /**
@@ -68,117 +57,121 @@ public class TraderState {
      * @param sellerID ID of the seller.
      */
     public void putIntoStock(Product product, int amount, int sellerID) {
-        List<Integer> queue = sellerQueues.computeIfAbsent(product, k -> new ArrayList<>());
+        sellerQueues.get(product).add(sellerID, amount);
+    }
 
-        for (int i = 0; i < amount; i++) {
-            queue.add(sellerID);
-        }
+    /**
+     * Creates a deep copy of this trader state.
+     * @return Copy that does not share any queues with this trader state.
+     */
+    TraderState copy() {
+        return new TraderState(sellerQueues.map(SellerQueue::copy), sequence);
     }
 
-    // static functions
+    long getSequence() {
+        return sequence;
+    }
 
-    public static final Path FILE_PATH = Paths.get("trader_state.txt");
-
-    // Writes current TraderState to text file
-    public static synchronized void writeTraderState(TraderState traderState) {
-        StringBuilder sb = new StringBuilder();
-        for (Product product : traderState.sellerQueues.keySet()) {
-            sb
-                    .append(product.toString())
-                    .append(":")
-                    .append(listToString(traderState.sellerQueues.get(product)))
-                    .append("\n");
-        }
-        createFile(sb.toString());
+    void setSequence(long sequence) {
+        this.sequence = sequence;
     }
 
-    /**
-     * Reads saved state from text file.
-     * @return the trader state read from file.
-     */
-    public static synchronized TraderState readTraderState() {
-        String text = readFile();
+    ProductTable<SellerQueue> getSellerQueues() {
+        return sellerQueues;
+    }
 
-        Map<Product, List<Integer>> sellerQueues = new HashMap<>();
-        if (text == null) { // file contains no data: create new trader state and return it.
-            for (Product product : Product.values()) {
-                sellerQueues.put(product, new ArrayList<>());
-            }
-        } else { // file contains data: parse data and return it.
-            String[] lines = text.split("\n");
-            for (String line : lines) {
-                String[] parts = line.split(":");
-                if (parts.length != 2) {
-                    continue;
-                }
-                Product product = Product.valueOf(parts[0]);
-                String[] sellers = parts[1].split(",");
-                List<Integer> sellerList = new ArrayList<>();
-                for (String seller : sellers) {
-                    sellerList.add(Integer.parseInt(seller));
-                }
-                sellerQueues.put(product, sellerList);
-            }
-        }
+    // static functions
 
-        return new TraderState(sellerQueues);
-    }
+    public static final Path FILE_PATH = filePath(0);
 
     /**
-     * Clears contents of text file to reset the marketplace state.
+     * @param partition Product partition of the trader. Partition 0 keeps the plain file name.
+     * @return Snapshot file of the partition.
      */
-    public static void resetTraderState() {
-        try {
-            BufferedWriter writer = Files.newBufferedWriter(TraderState.FILE_PATH, StandardCharsets.UTF_8);
-            writer.write("");
-            writer.close();
-        } catch (IOException ignored) {}
+    public static Path filePath(int partition) {
+        return Paths.get(partition == 0 ? "trader_state.bin" : "trader_state." + partition + ".bin");
     }
 
     /**
-     * Converts list of seller IDs to a comma separated string for writing.
-     * @param list List to convert.
-     * @return String representation of list.
+     * Writes current TraderState as binary snapshot of partition 0.
+     * @param traderState Trader state to write.
+     * @throws UncheckedIOException If the snapshot could not be written.
      */
-    private static String listToString(List<Integer> list) {
-        StringBuilder sb = new StringBuilder();
-        for (int j : list) {
-            sb.append(j).append(",");
-        }
-        return sb.toString();
+    public static void writeTraderState(TraderState traderState) {
+        writeTraderState(0, traderState);
     }
 
     /**
-     * Writes a string to text file to save trader's current state
-     * @param content Content to write to file.
+     * Writes current TraderState as binary snapshot. The snapshot is written to a temporary file first and then
+     * moved over the old one, so a crash never leaves a truncated snapshot behind.
+     * @param partition Product partition of the trader.
+     * @param traderState Trader state to write.
+     * @throws UncheckedIOException If the snapshot could not be written. The old snapshot is left in place, so
+     *         the caller must keep the log records it wanted to drop.
      */
-    private static void createFile(String content) {
+    public static synchronized void writeTraderState(int partition, TraderState traderState) {
+        Path path = filePath(partition);
+        Path tempPath = Paths.get(path + ".tmp");
         try {
-            BufferedWriter writer = Files.newBufferedWriter(TraderState.FILE_PATH, StandardCharsets.UTF_8);
-            writer.write(content);
-            writer.close();
-        } catch (IOException ignored) {}
+            TraderStateFormat.writeBinary(traderState, tempPath);
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     /**
-     * Reads the contexts of text file into string.
-     * @return Content of the file.
+     * Reads saved state of partition 0.
+     * @return the trader state read from file.
+     * @throws UncheckedIOException If the snapshot exists but could not be read.
      */
-    private static String readFile() {
+    public static TraderState readTraderState() {
+        return readTraderState(0);
+    }
 
-        StringBuilder text = new StringBuilder();
+    /**
+     * Reads saved state from the binary snapshot and replays the trader log written since the snapshot.
+     * @param partition Product partition of the trader.
+     * @return the trader state read from file.
+     * @throws UncheckedIOException If the snapshot exists but could not be read. Starting from an empty state
+     *         instead would overwrite the snapshot and lose the trades it holds.
+     */
+    public static synchronized TraderState readTraderState(int partition) {
+        // no snapshot is written meanwhile, writeTraderState waits for this lock. A trader of this process can
+        // still rotate the log, so records moved to a new segment while the log was read are read again.
+        while (true) {
+            TraderState traderState = readSnapshot(filePath(partition));
+            if (TraderLog.replay(partition, traderState)) {
+                return traderState;
+            }
+        }
+    }
 
+    /**
+     * @param path Path of the snapshot.
+     * @return The trader state stored in the snapshot, or an empty one if there is no snapshot yet.
+     */
+    private static TraderState readSnapshot(Path path) {
         try {
-            BufferedReader reader = Files.newBufferedReader(TraderState.FILE_PATH, StandardCharsets.UTF_8);
-
-            for (String line = reader.readLine(); line != null; line = reader.readLine())
-                text.append(line).append("\n");
-
-            reader.close();
+            return Files.size(path) > 0
+                    ? TraderStateFormat.readBinary(path)
+                    : new TraderState(TraderStateFormat.emptyQueues(), 0);
+        } catch (NoSuchFileException e) { // no snapshot yet: create new trader state
+            return new TraderState(TraderStateFormat.emptyQueues(), 0);
         } catch (IOException e) {
-            return null;
+            throw new UncheckedIOException(e);
         }
+    }
 
-        return text.toString();
+    /**
+     * Deletes snapshots and trader logs of all partitions to reset the marketplace state.
+     */
+    public static void resetTraderState() {
+        for (int partition = 0; partition < Product.values().length; partition++) {
+            TraderLog.clear(partition);
+            try {
+                Files.deleteIfExists(filePath(partition));
+            } catch (IOException ignored) {}
+        }
     }
 }
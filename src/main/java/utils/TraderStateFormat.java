@@ -0,0 +1,207 @@
+package utils;
+
+import product.Product;
+import utils.collections.ProductTable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads and writes trader state snapshots. The trader uses a compact binary layout that is read and written
+ * through a heap {@link ByteBuffer}, so no mapping keeps the file open when it is moved over the old snapshot:
+ * <pre>
+ * header:  int magic, int version, long sequence, int product count
+ * product: int product ordinal, int run count, run count * (int seller ID, int unit count)
+ * </pre>
+ * The human-readable text format ({@code FISH:3x2,1x1,}) is still supported for inspecting and editing snapshots.
+ * Queues written one unit per seller ID ({@code FISH:3,3,1,}) are read as well.
+ * Run {@code java utils.TraderStateFormat to-text|to-binary <input> <output>} to convert between both.
+ */
+public class TraderStateFormat {
+
+    private static final int MAGIC = 0x54524453; // "TRDS"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 3 * Integer.BYTES + Long.BYTES;
+    private static final int PRODUCT_HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int RUN_SIZE = 2 * Integer.BYTES;
+    private static final String SEQUENCE_KEY = "SEQ";
+    private static final String RUN_SEPARATOR = "x";
+
+    private static final Product[] PRODUCTS = Product.values();
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: TraderStateFormat to-text|to-binary <input> <output>");
+            return;
+        }
+        Path input = Paths.get(args[1]);
+        Path output = Paths.get(args[2]);
+        switch (args[0]) {
+            case "to-text" -> writeText(readBinary(input), output);
+            case "to-binary" -> writeBinary(readText(input), output);
+            default -> System.err.println("Unknown conversion: " + args[0]);
+        }
+    }
+
+    /**
+     * Reads a binary snapshot. The header, the product ordinals and the run counts are checked against the file, so
+     * a truncated or foreign file is rejected instead of read as a smaller trader state.
+     * @param path Path of the snapshot.
+     * @return The trader state stored in the snapshot.
+     * @throws IOException If the file could not be read or is not a valid snapshot.
+     */
+    public static TraderState readBinary(Path path) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Not a trader state file: " + path);
+            }
+            buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Trader state file is truncated: " + path);
+                }
+            }
+            buffer.flip();
+        }
+
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Not a trader state file: " + path);
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported trader state version " + version + ": " + path);
+        }
+        long sequence = buffer.getLong();
+        int productCount = buffer.getInt();
+        if (productCount < 0 || productCount > PRODUCTS.length) {
+            throw new IOException("Invalid product count " + productCount + ": " + path);
+        }
+
+        ProductTable<SellerQueue> sellerQueues = emptyQueues();
+        for (int i = 0; i < productCount; i++) {
+            if (buffer.remaining() < PRODUCT_HEADER_SIZE) {
+                throw new IOException("Trader state file is truncated: " + path);
+            }
+            int ordinal = buffer.getInt();
+            if (ordinal < 0 || ordinal >= PRODUCTS.length) {
+                throw new IOException("Invalid product ordinal " + ordinal + ": " + path);
+            }
+            int runs = buffer.getInt();
+            if (runs < 0 || (long) runs * RUN_SIZE > buffer.remaining()) {
+                throw new IOException("Invalid run count " + runs + ": " + path);
+            }
+            SellerQueue queue = sellerQueues.get(PRODUCTS[ordinal]);
+            for (int j = 0; j < runs; j++) {
+                queue.add(buffer.getInt(), buffer.getInt());
+            }
+        }
+        if (buffer.hasRemaining()) {
+            throw new IOException("Trailing bytes after trader state: " + path);
+        }
+        return new TraderState(sellerQueues, sequence);
+    }
+
+    /**
+     * Writes a binary snapshot and forces it to the disk.
+     * @param traderState Trader state to write.
+     * @param path Path of the snapshot.
+     */
+    public static void writeBinary(TraderState traderState, Path path) throws IOException {
+        ProductTable<SellerQueue> sellerQueues = traderState.getSellerQueues();
+        long size = HEADER_SIZE;
+        for (Product product : PRODUCTS) {
+            size += PRODUCT_HEADER_SIZE + (long) sellerQueues.get(product).runCount() * RUN_SIZE;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Trader state too large for a snapshot: " + size + " bytes");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(traderState.getSequence()).putInt(sellerQueues.size());
+        sellerQueues.forEach((product, queue) -> {
+            buffer.putInt(product.ordinal()).putInt(queue.runCount());
+            queue.forEachRun((sellerID, units) -> buffer.putInt(sellerID).putInt(units));
+        });
+        buffer.flip();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Reads a text snapshot.
+     * @param path Path of the snapshot.
+     * @return The trader state stored in the snapshot.
+     */
+    public static TraderState readText(Path path) throws IOException {
+        long sequence = 0;
+        ProductTable<SellerQueue> sellerQueues = emptyQueues();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                String[] parts = line.split(":");
+                if (parts.length != 2) {
+                    continue;
+                }
+                if (parts[0].equals(SEQUENCE_KEY)) {
+                    sequence = Long.parseLong(parts[1]);
+                    continue;
+                }
+                SellerQueue queue = sellerQueues.get(Product.valueOf(parts[0]));
+                for (String run : parts[1].split(",")) {
+                    String[] runParts = run.split(RUN_SEPARATOR);
+                    queue.add(Integer.parseInt(runParts[0]), runParts.length == 2 ? Integer.parseInt(runParts[1]) : 1);
+                }
+            }
+        }
+        return new TraderState(sellerQueues, sequence);
+    }
+
+    /**
+     * Writes a text snapshot.
+     * @param traderState Trader state to write.
+     * @param path Path of the snapshot.
+     */
+    public static void writeText(TraderState traderState, Path path) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writer.write(SEQUENCE_KEY + ":" + traderState.getSequence());
+            writer.newLine();
+            for (Product product : PRODUCTS) {
+                writer.write(product + ":" + queueToString(traderState.getSellerQueues().get(product)));
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * @return Seller queues with an empty queue for every product.
+     */
+    static ProductTable<SellerQueue> emptyQueues() {
+        return new ProductTable<>(product -> new SellerQueue());
+    }
+
+    /**
+     * Converts the runs of a seller queue to a comma separated string of {@code sellerIDxunits} for writing.
+     * @param queue Queue to convert.
+     * @return String representation of queue.
+     */
+    private static String queueToString(SellerQueue queue) {
+        StringBuilder sb = new StringBuilder();
+        queue.forEachRun((sellerID, units) -> sb.append(sellerID).append(RUN_SEPARATOR).append(units).append(","));
+        return sb.toString();
+    }
+}
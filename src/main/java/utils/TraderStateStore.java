@@ -0,0 +1,458 @@
+package utils;
+
+import product.Product;
+import utils.collections.IntArrayDeque;
+import utils.collections.ProductTable;
+
+import java.io.UncheckedIOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps the authoritative trader state of the coordinator in memory and persists it through the trader log.
+ * Every mutation appends one fixed size record to the {@link TraderLog}, so persisting a trade costs the same
+ * no matter how much stock the trader holds. The log is compacted into a snapshot of the trader state file
+ * every {@link #COMPACTION_PERIOD} ms, or as soon as {@link #COMPACTION_THRESHOLD} records are pending.
+ * The snapshot is written outside the store lock, so trades are never blocked by it.
+ * <p>
+ * Every product has its own lock, so trades of different products run in parallel. Only appending to the log
+ * is serialized, under the lock of the store, because records have to be written in sequence order. A product
+ * lock is always taken before the store lock. Compaction takes all product locks to copy a consistent state.
+ * <p>
+ * With replication started, every mutation is also appended to a {@link ReplicationLog}, which the coordinator
+ * streams to its standby peers.
+ * <p>
+ * A store confined to one owner thread with {@link #confineTo} takes none of these locks. The owner is the only
+ * thread that calls it, and the periodic compaction hands its copy of the state to the owner.
+ */
+public class TraderStateStore {
+
+    /**
+     * Receives the sellers to pay for the units taken out of stock.
+     */
+    public interface PayoutListener {
+
+        /**
+         * Called under the lock of the product, so it must not block.
+         * @param product Product the units were taken of.
+         * @param sellerID ID of the seller.
+         * @param units Units of the seller taken out of stock.
+         */
+        void pay(Product product, int sellerID, int units);
+    }
+
+    public static final long COMPACTION_PERIOD = 1000; // ms
+    public static final int COMPACTION_THRESHOLD = 1000;
+
+    private final int partition;
+    private final TraderState traderState;
+    private final TraderLog traderLog;
+    private final ProductTable<ReentrantLock> productLocks = new ProductTable<>(product -> new ReentrantLock());
+    // reused for the payouts of every trade of a product. Guarded by the product lock.
+    private final ProductTable<IntArrayDeque> payoutBuffers = new ProductTable<>(product -> new IntArrayDeque());
+    private final ScheduledFuture<?> periodicCompaction;
+
+    // keeps snapshots from being written out of order
+    private final Object writeLock = new Object();
+    // the last snapshot failed and its log records are still waiting to be compacted
+    private volatile boolean snapshotFailed;
+
+    // runs tasks on the thread the store is confined to, null if every thread may call the store
+    private volatile Executor owner;
+    // confined stores only: sequence of the last snapshot written and whether the store was closed, guarded by
+    // writeLock
+    private long writtenSequence = -1;
+    private boolean writesClosed;
+
+    private boolean compactionScheduled;
+    private boolean closed;
+
+    // mutations not sent to the standby peers yet, null without replication. Guarded by this.
+    private ReplicationLog replicationLog;
+    private Runnable replicationListener;
+
+    private TraderStateStore(int partition, TraderState traderState, TraderLog traderLog) {
+        this.partition = partition;
+        this.traderState = traderState;
+        this.traderLog = traderLog;
+        this.compactionScheduled = false;
+        this.closed = false;
+        this.snapshotFailed = false;
+        this.periodicCompaction = PeerExecutors.scheduleAtFixedRate(this::compact, COMPACTION_PERIOD, COMPACTION_PERIOD, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Recovers the trader state of partition 0, which holds all products with a single trader.
+     * @return Store holding the recovered trader state.
+     */
+    public static TraderStateStore open() {
+        return open(0);
+    }
+
+    /**
+     * Recovers the trader state from the last snapshot and the log tail written since, and keeps it in memory.
+     * The recovered state is written as new snapshot right away, so the log starts empty.
+     * @param partition Product partition of the trader, each partition has its own files.
+     * @return Store holding the recovered trader state.
+     * @throws UncheckedIOException If the snapshot could not be read or written. The log is kept then.
+     */
+    public static TraderStateStore open(int partition) {
+        TraderState traderState = TraderState.readTraderState(partition);
+        TraderState.writeTraderState(partition, traderState);
+        TraderLog.clear(partition);
+        return new TraderStateStore(partition, traderState, TraderLog.open(partition));
+    }
+
+    /**
+     * Takes over the trader state of a standby replica. The replica is streamed asynchronously and can lag the
+     * previous coordinator, so the state recovered from the snapshot and the log is taken instead if it contains
+     * later mutations. The state is written as new snapshot of partition 0 right away, so the log starts empty.
+     * @param replica Replica holding the state of the previous coordinator.
+     * @return Store holding the newer of the replica and the state on disk.
+     * @throws UncheckedIOException If the snapshot could not be read or written. The log is kept then.
+     */
+    public static TraderStateStore open(TraderReplica replica) {
+        TraderState traderState = replica.getTraderState();
+        TraderState recovered = TraderState.readTraderState(0);
+        if (recovered.getSequence() > traderState.getSequence()) { // trades acknowledged but not streamed yet
+            traderState = recovered;
+        }
+        TraderState.writeTraderState(0, traderState);
+        TraderLog.clear(0);
+        return new TraderStateStore(0, traderState, TraderLog.open(0));
+    }
+
+    /**
+     * Checks if a specified amount of product is available.
+     * @param product Product to check.
+     * @param amount Amount to check
+     * @return Product available or not.
+     */
+    public boolean productAvailable(Product product, int amount) {
+        if (owner != null) {
+            return traderState.productAvailable(product, amount);
+        }
+        ReentrantLock lock = productLocks.get(product);
+        lock.lock();
+        try {
+            return traderState.productAvailable(product, amount);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes specified amount of product from stock and adds how many of these units belong to each seller to the
+     * payouts. Nothing is taken out if the amount is not available.
+     * @param product Product to take out.
+     * @param amount Amount to take out.
+     * @param payouts Receives (seller ID, units) pairs of the sellers to pay, one pair per seller in FIFO order.
+     * @return Product taken out of stock or not.
+     */
+    public boolean takeOutOfStock(Product product, int amount, IntArrayDeque payouts) {
+        if (owner != null) {
+            return takeOutOfStockLocked(product, amount, payouts);
+        }
+        ReentrantLock lock = productLocks.get(product);
+        lock.lock();
+        try {
+            return takeOutOfStockLocked(product, amount, payouts);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes specified amount of product from stock and passes the sellers to pay to the listener. Unlike
+     * {@link #takeOutOfStock(Product, int, IntArrayDeque)}, this allocates nothing per trade.
+     * @param product Product to take out.
+     * @param amount Amount to take out.
+     * @param listener Called once per seller to pay, in FIFO order.
+     * @return Product taken out of stock or not.
+     */
+    public boolean takeOutOfStock(Product product, int amount, PayoutListener listener) {
+        if (owner != null) {
+            return takeOutOfStockLocked(product, amount, listener);
+        }
+        ReentrantLock lock = productLocks.get(product);
+        lock.lock();
+        try {
+            return takeOutOfStockLocked(product, amount, listener);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds specified amount of product to queue for a given seller.
+     * @param product Product to add.
+     * @param amount Amount to add.
+     * @param sellerID ID of the seller.
+     */
+    public void putIntoStock(Product product, int amount, int sellerID) {
+        if (owner != null) {
+            traderState.putIntoStock(product, amount, sellerID);
+            appendOffer(product, amount, sellerID);
+            return;
+        }
+        ReentrantLock lock = productLocks.get(product);
+        lock.lock();
+        try {
+            traderState.putIntoStock(product, amount, sellerID);
+            synchronized (this) {
+                appendOffer(product, amount, sellerID);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Confines the store to one thread. From then on only that thread may call the store, so no lock is taken.
+     * The periodic compaction copies the state on it and writes the snapshot on another thread. Must be called
+     * on the owner thread before the store is used.
+     * @param owner Runs a task on the owner thread, right away if called on it.
+     */
+    public void confineTo(Executor owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * Starts appending the mutations to a replication log.
+     * @param listener Called when a mutation is appended to the empty log, must not block.
+     */
+    public synchronized void startReplication(Runnable listener) {
+        replicationLog = new ReplicationLog();
+        replicationListener = listener;
+    }
+
+    /**
+     * @return The mutations since the last call in sequence order, or null if there are none.
+     */
+    public synchronized ReplicationLog.Batch drainReplication() {
+        return replicationLog == null ? null : replicationLog.drain();
+    }
+
+    /**
+     * Copies the whole trader state into a reset batch for a standby peer.
+     * @return Reset batch of the current state.
+     */
+    public ReplicationLog.Batch snapshot() {
+        if (owner != null) {
+            return ReplicationLog.Batch.of(traderState);
+        }
+        productLocks.forEach((product, lock) -> lock.lock());
+        try {
+            synchronized (this) {
+                return ReplicationLog.Batch.of(traderState);
+            }
+        } finally {
+            productLocks.forEach((product, lock) -> lock.unlock());
+        }
+    }
+
+    /**
+     * Writes a snapshot of the trader state and drops the log records contained in it.
+     * The log is rotated under the locks, or on the owner thread of a confined store, and the snapshot is written
+     * outside of them. If the snapshot cannot be written, the records are kept and the next compaction tries again.
+     */
+    public void compact() {
+        Executor owner = this.owner;
+        if (owner != null) {
+            owner.execute(() -> {
+                Compaction compaction = rotateConfined();
+                if (compaction != null) {
+                    PeerExecutors.schedule(() -> writeConfined(compaction), 0, TimeUnit.MILLISECONDS);
+                }
+            });
+            return;
+        }
+        synchronized (writeLock) {
+            Compaction compaction;
+            productLocks.forEach((product, lock) -> lock.lock());
+            try {
+                synchronized (this) {
+                    compaction = rotate();
+                }
+            } finally {
+                productLocks.forEach((product, lock) -> lock.unlock());
+            }
+            if (compaction != null && write(compaction.snapshot())) {
+                TraderLog.deleteCompacted(partition, compaction.segment());
+            }
+        }
+    }
+
+    /**
+     * Stops the background compaction, compacts the log and closes it.
+     * Must be called before another peer takes over the trader state, on the owner thread of a confined store.
+     */
+    public void close() {
+        if (owner != null) {
+            if (closed) {
+                return;
+            }
+            periodicCompaction.cancel(false);
+            Compaction compaction = rotateConfined();
+            closed = true;
+            if (compaction != null) {
+                writeConfined(compaction);
+            }
+            synchronized (writeLock) {
+                writesClosed = true; // snapshots copied earlier are older, the next trader may own the files
+            }
+            traderLog.close();
+            return;
+        }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        periodicCompaction.cancel(false);
+        compact();
+        synchronized (this) {
+            traderLog.close();
+        }
+    }
+
+    /**
+     * Copies the state and rotates the log for a compaction. Must be called while holding all locks, or on the
+     * owner thread of a confined store.
+     * @return Copy of the state and the segment the log was rotated to, or null if nothing was logged since the
+     *         last snapshot.
+     */
+    private Compaction rotate() {
+        compactionScheduled = false;
+        if (traderLog.size() == 0 && !snapshotFailed) {
+            return null;
+        }
+        TraderState snapshot = traderState.copy();
+        return new Compaction(snapshot, traderLog.rotate());
+    }
+
+    /**
+     * Writes a snapshot of the state. Must be called while holding the write lock.
+     * @return True if the snapshot was written, false if it failed and the rotated log has to be kept.
+     */
+    private boolean write(TraderState snapshot) {
+        try {
+            TraderState.writeTraderState(partition, snapshot);
+        } catch (UncheckedIOException e) {
+            Logger.log("Trader state snapshot failed: " + e.getCause());
+            snapshotFailed = true;
+            return false;
+        }
+        snapshotFailed = false;
+        return true;
+    }
+
+    /**
+     * Rotates the log of a confined store. Must be called on the owner thread.
+     * @return Copy of the state and its segment, or null if the store is closed or nothing was logged since the
+     *         last snapshot.
+     */
+    private Compaction rotateConfined() {
+        return closed ? null : rotate();
+    }
+
+    /**
+     * Writes a snapshot copied by {@link #rotateConfined()}. The writes can run in a different order than the
+     * copies, so an older snapshot is dropped. Only the segments up to the one of the snapshot are deleted, the
+     * owner may have rotated later ones in the meantime.
+     */
+    private void writeConfined(Compaction compaction) {
+        TraderState snapshot = compaction.snapshot();
+        synchronized (writeLock) {
+            if (writesClosed || snapshot.getSequence() <= writtenSequence || !write(snapshot)) {
+                return;
+            }
+            writtenSequence = snapshot.getSequence();
+            TraderLog.deleteCompacted(partition, compaction.segment());
+        }
+    }
+
+    /**
+     * State copied for a snapshot.
+     * @param snapshot Copy of the trader state.
+     * @param segment Log segment rotated when the state was copied, it holds the last records the copy contains.
+     */
+    private record Compaction(TraderState snapshot, int segment) {}
+
+    /**
+     * Must be called while holding the lock of the product.
+     */
+    private boolean takeOutOfStockLocked(Product product, int amount, IntArrayDeque payouts) {
+        if (!traderState.takeOutOfStock(product, amount, payouts)) {
+            return false;
+        }
+        if (owner != null) {
+            appendTake(product, amount);
+            return true;
+        }
+        synchronized (this) {
+            appendTake(product, amount);
+        }
+        return true;
+    }
+
+    /**
+     * Must be called while holding the lock of the product.
+     */
+    private boolean takeOutOfStockLocked(Product product, int amount, PayoutListener listener) {
+        IntArrayDeque payouts = payoutBuffers.get(product);
+        payouts.clear();
+        if (!takeOutOfStockLocked(product, amount, payouts)) {
+            return false;
+        }
+        for (int i = 0; i < payouts.size(); i += 2) {
+            listener.pay(product, payouts.get(i), payouts.get(i + 1));
+        }
+        return true;
+    }
+
+    /**
+     * Logs an offer. Must be called while holding the lock of the store, or on the owner thread.
+     */
+    private void appendOffer(Product product, int amount, int sellerID) {
+        long sequence = nextSequence();
+        traderLog.appendOffer(sequence, product, amount, sellerID);
+        appendReplication(sequence, product, amount, sellerID);
+        compactIfNeeded();
+    }
+
+    /**
+     * Logs a take. Must be called while holding the lock of the store, or on the owner thread.
+     */
+    private void appendTake(Product product, int amount) {
+        long sequence = nextSequence();
+        traderLog.appendTake(sequence, product, amount);
+        appendReplication(sequence, product, amount, -1);
+        compactIfNeeded();
+    }
+
+    private long nextSequence() {
+        long sequence = traderState.getSequence() + 1;
+        traderState.setSequence(sequence);
+        return sequence;
+    }
+
+    private void appendReplication(long sequence, Product product, int amount, int sellerID) {
+        if (replicationLog != null && replicationLog.append(sequence, product, amount, sellerID)) {
+            replicationListener.run();
+        }
+    }
+
+    /**
+     * Schedules an early compaction once enough records are pending.
+     */
+    private void compactIfNeeded() {
+        if (traderLog.size() >= COMPACTION_THRESHOLD && !compactionScheduled && !closed) {
+            compactionScheduled = true;
+            PeerExecutors.schedule(this::compact, 0, TimeUnit.MILLISECONDS);
+        }
+    }
+}
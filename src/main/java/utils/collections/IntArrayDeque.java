@@ -0,0 +1,132 @@
+package utils.collections;
+
+import java.util.Arrays;
+
+/**
+ * Double ended queue of primitive ints backed by a ring buffer. Elements can be read and replaced by their
+ * position from the front. The buffer doubles when full and halves once less than a quarter of it is used,
+ * so removed elements are never retained. Not thread safe.
+ */
+public class IntArrayDeque {
+
+    private static final int MIN_CAPACITY = 8; // power of two
+
+    private int[] elements;
+    private int head;
+    private int size;
+
+    public IntArrayDeque() {
+        this.elements = new int[MIN_CAPACITY];
+        this.head = 0;
+        this.size = 0;
+    }
+
+    /**
+     * @return Amount of elements in the deque.
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return Amount of elements the deque can hold without growing.
+     */
+    public int capacity() {
+        return elements.length;
+    }
+
+    /**
+     * Appends an element to the end of the deque.
+     * @param element Element to append.
+     */
+    public void addLast(int element) {
+        if (size == elements.length) {
+            resize(elements.length * 2);
+        }
+        elements[index(size)] = element;
+        size++;
+    }
+
+    /**
+     * Removes the first element of the deque.
+     * @return The removed element.
+     */
+    public int removeFirst() {
+        if (size == 0) {
+            throw new IllegalStateException("Deque is empty");
+        }
+        int element = elements[head];
+        head = (head + 1) & (elements.length - 1);
+        size--;
+        if (elements.length > MIN_CAPACITY && size < elements.length / 4) {
+            resize(elements.length / 2);
+        }
+        return element;
+    }
+
+    /**
+     * @param position Position counted from the front of the deque.
+     * @return Element at the position.
+     */
+    public int get(int position) {
+        checkPosition(position);
+        return elements[index(position)];
+    }
+
+    /**
+     * Replaces the element at a position.
+     * @param position Position counted from the front of the deque.
+     * @param element New element.
+     */
+    public void set(int position, int element) {
+        checkPosition(position);
+        elements[index(position)] = element;
+    }
+
+    /**
+     * Removes all elements but keeps the capacity, so the deque can be reused without allocating.
+     */
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    /**
+     * @return All elements in FIFO order.
+     */
+    public int[] toArray() {
+        int[] array = new int[size];
+        for (int i = 0; i < size; i++) {
+            array[i] = elements[index(i)];
+        }
+        return array;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+
+    private int index(int position) {
+        return (head + position) & (elements.length - 1);
+    }
+
+    private void checkPosition(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("Position " + position + " out of bounds for size " + size);
+        }
+    }
+
+    private void resize(int capacity) {
+        int[] newElements = new int[capacity];
+        for (int i = 0; i < size; i++) {
+            newElements[i] = elements[index(i)];
+        }
+        elements = newElements;
+        head = 0;
+    }
+}
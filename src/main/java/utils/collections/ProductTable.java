@@ -0,0 +1,61 @@
+package utils.collections;
+
+import product.Product;
+
+import java.util.EnumMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Table holding one value for every product. Backed by an {@link EnumMap}, so lookups index an array by the
+ * product ordinal instead of hashing.
+ * @param <V> Type of the values.
+ */
+public class ProductTable<V> {
+
+    private final EnumMap<Product, V> values;
+
+    /**
+     * Creates a table with a value for every product.
+     * @param initializer Creates the initial value of a product.
+     */
+    public ProductTable(Function<Product, V> initializer) {
+        this.values = new EnumMap<>(Product.class);
+        for (Product product : Product.values()) {
+            values.put(product, initializer.apply(product));
+        }
+    }
+
+    /**
+     * @param product Product to look up.
+     * @return Value of the product.
+     */
+    public V get(Product product) {
+        return values.get(product);
+    }
+
+    /**
+     * @return Amount of products in the table.
+     */
+    public int size() {
+        return values.size();
+    }
+
+    /**
+     * Passes every product and its value to the consumer, in product order.
+     * @param consumer Consumer of the entries.
+     */
+    public void forEach(BiConsumer<Product, V> consumer) {
+        values.forEach(consumer);
+    }
+
+    /**
+     * Creates a new table by transforming every value of this table.
+     * @param mapper Transforms a value.
+     * @return New table with the transformed values.
+     * @param <R> Type of the transformed values.
+     */
+    public <R> ProductTable<R> map(Function<V, R> mapper) {
+        return new ProductTable<>(product -> mapper.apply(values.get(product)));
+    }
+}
@@ -0,0 +1,58 @@
+package loadgen;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import utils.LogLevel;
+import utils.Logger;
+import utils.TraderState;
+
+import java.util.Map;
+
+public class LoadGeneratorTest {
+
+    @Test
+    public void testClosedLoop() throws Exception {
+        Map<LoadGenerator.Operation, LoadGenerator.OperationStats> stats = run("--duration=1");
+
+        Assertions.assertTrue(count(stats, LoadGenerator.Operation.OFFER) > 0);
+        Assertions.assertTrue(count(stats, LoadGenerator.Operation.DISCOVER) > 0);
+    }
+
+    @Test
+    public void testOpenLoop() throws Exception {
+        Map<LoadGenerator.Operation, LoadGenerator.OperationStats> stats = run("--duration=1", "--rate=200", "--products=FISH");
+
+        long operations = count(stats, LoadGenerator.Operation.OFFER) + count(stats, LoadGenerator.Operation.DISCOVER);
+        Assertions.assertTrue(operations > 100 && operations <= 200, "operations: " + operations);
+    }
+
+    @Test
+    public void testBatches() throws Exception {
+        Map<LoadGenerator.Operation, LoadGenerator.OperationStats> stats = run("--duration=1", "--batch=4");
+
+        Assertions.assertTrue(count(stats, LoadGenerator.Operation.OFFER) > 0);
+        Assertions.assertTrue(count(stats, LoadGenerator.Operation.DISCOVER) > 0);
+    }
+
+    @Test
+    public void testFastBuy() throws Exception {
+        Map<LoadGenerator.Operation, LoadGenerator.OperationStats> stats = run("--duration=1", "--fast-buy=true");
+
+        Assertions.assertEquals(0, count(stats, LoadGenerator.Operation.DISCOVER));
+        Assertions.assertTrue(count(stats, LoadGenerator.Operation.BUY) > 0);
+    }
+
+    private static Map<LoadGenerator.Operation, LoadGenerator.OperationStats> run(String... args) throws Exception {
+        Logger.setLevel(LogLevel.WARN);
+        try {
+            return new LoadGenerator(LoadGenerator.Options.parse(args)).run();
+        } finally {
+            Logger.setLevel(LogLevel.DEBUG);
+            TraderState.resetTraderState();
+        }
+    }
+
+    private static long count(Map<LoadGenerator.Operation, LoadGenerator.OperationStats> stats, LoadGenerator.Operation operation) {
+        return stats.get(operation).responseTimes.snapshot().getTotalCount();
+    }
+}
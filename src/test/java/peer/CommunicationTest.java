@@ -18,24 +18,12 @@ public class CommunicationTest {
     @Test
     public void testOffer() throws RemoteException, InterruptedException {
         Seller seller = new Seller(0,2);
-        APeer coordinator = new APeer(1, 2) {
-            @Override
-            public void discoverAck(Product product, int amount, boolean available, int[] traderTimestamp) throws RemoteException {}
-
-            @Override
-            public void buyAck(Product product, int amount, boolean bought, int[] traderTimestamp, long timeInitiated) throws RemoteException {}
-
-            @Override
-            public void offerAck(int[] sellerTimestamp) throws RemoteException {}
-
-            @Override
-            public void pay(int price, int[] traderTimestamp) throws RemoteException {}
-        };
+        APeer coordinator = newCoordinator(1, 2);
         IPeer[] peers = new IPeer[] { seller, coordinator };
         seller.setPeers(peers);
         coordinator.setPeers(peers);
 
-        seller.election(new int[] {});
+        seller.startElection();
         Thread.sleep(1000);
 
         seller.initiateOffer(Product.BOARS, 5);
@@ -60,25 +48,13 @@ public class CommunicationTest {
     public void testSuccessfulBuy() throws RemoteException, InterruptedException {
         Buyer buyer = new Buyer(0,3);
         Seller seller = new Seller(1,3);
-        APeer coordinator = new APeer(2, 3) {
-            @Override
-            public void discoverAck(Product product, int amount, boolean available, int[] traderTimestamp) throws RemoteException {}
-
-            @Override
-            public void buyAck(Product product, int amount, boolean bought, int[] traderTimestamp, long timeInitiated) throws RemoteException {}
-
-            @Override
-            public void offerAck(int[] sellerTimestamp) throws RemoteException {}
-
-            @Override
-            public void pay(int price, int[] traderTimestamp) throws RemoteException {}
-        };
+        APeer coordinator = newCoordinator(2, 3);
         IPeer[] peers = new IPeer[] { buyer, seller, coordinator };
         buyer.setPeers(peers);
         seller.setPeers(peers);
         coordinator.setPeers(peers);
 
-        buyer.election(new int[] {});
+        buyer.startElection();
         Thread.sleep(1000);
         // put items in stock
         seller.initiateOffer(Product.BOARS, 5);
@@ -100,7 +76,7 @@ public class CommunicationTest {
         Assertions.assertEquals(9, seller.money);
 
         Assertions.assertArrayEquals(new int[] { 4, 1, 3 }, buyer.timestamp);
-        Assertions.assertArrayEquals(new int[] { 3, 5, 3 }, seller.timestamp);
+        Assertions.assertArrayEquals(new int[] { 3, 3, 3 }, seller.timestamp); // one payment for all units
         Assertions.assertArrayEquals(new int[] { 3, 1, 3 }, coordinator.timestamp);
     }
 
@@ -108,25 +84,13 @@ public class CommunicationTest {
     public void testFailedBuyInvalidTimestamp() throws RemoteException, InterruptedException {
         Buyer buyer = new Buyer(0,3);
         Seller seller = new Seller(1,3);
-        APeer coordinator = new APeer(2, 3) {
-            @Override
-            public void discoverAck(Product product, int amount, boolean available, int[] traderTimestamp) throws RemoteException {}
-
-            @Override
-            public void buyAck(Product product, int amount, boolean bought, int[] traderTimestamp, long timeInitiated) throws RemoteException {}
-
-            @Override
-            public void offerAck(int[] sellerTimestamp) throws RemoteException {}
-
-            @Override
-            public void pay(int price, int[] traderTimestamp) throws RemoteException {}
-        };
+        APeer coordinator = newCoordinator(2, 3);
         IPeer[] peers = new IPeer[] { buyer, seller, coordinator };
         buyer.setPeers(peers);
         seller.setPeers(peers);
         coordinator.setPeers(peers);
 
-        buyer.election(new int[] {});
+        buyer.startElection();
         Thread.sleep(1000);
 
         // put items in stock
@@ -156,25 +120,13 @@ public class CommunicationTest {
     public void testFailedBuyLowStock() throws RemoteException, InterruptedException {
         Buyer buyer = new Buyer(0,3);
         Seller seller = new Seller(1,3);
-        APeer coordinator = new APeer(2, 3) {
-            @Override
-            public void discoverAck(Product product, int amount, boolean available, int[] traderTimestamp) throws RemoteException {}
-
-            @Override
-            public void buyAck(Product product, int amount, boolean bought, int[] traderTimestamp, long timeInitiated) throws RemoteException {}
-
-            @Override
-            public void offerAck(int[] sellerTimestamp) throws RemoteException {}
-
-            @Override
-            public void pay(int price, int[] traderTimestamp) throws RemoteException {}
-        };
+        APeer coordinator = newCoordinator(2, 3);
         IPeer[] peers = new IPeer[] { buyer, seller, coordinator };
         buyer.setPeers(peers);
         seller.setPeers(peers);
         coordinator.setPeers(peers);
 
-        buyer.election(new int[] {});
+        buyer.startElection();
         Thread.sleep(1000);
 
         // put items in stock
@@ -213,4 +165,168 @@ public class CommunicationTest {
         Assertions.assertArrayEquals(new int[] { 0, 2, 1 }, seller.timestamp);
         Assertions.assertArrayEquals(new int[] { 1, 1, 2 }, coordinator.timestamp);
     }
+
+    @Test
+    public void testBatchBuy() throws RemoteException, InterruptedException {
+        Seller seller = new Seller(0, 3);
+        boolean[][] bought = new boolean[1][];
+        APeer buyer = new APeer(1, 3) {
+            @Override
+            public void discoverAck(Product product, int amount, boolean available, int[] traderTimestamp) throws RemoteException {}
+
+            @Override
+            public void buyAck(Product product, int amount, boolean bought, int[] traderTimestamp, long timeInitiated) throws RemoteException {}
+
+            @Override
+            public void buyBatchAck(Product[] products, int[] amounts, boolean[] boughtEntries, int[] traderTimestamp, long timeInitiated) throws RemoteException {
+                bought[0] = boughtEntries;
+            }
+
+            @Override
+            public void offerAck(int[] sellerTimestamp) throws RemoteException {}
+
+            @Override
+            public void pay(int price, int[] traderTimestamp) throws RemoteException {}
+        };
+        APeer coordinator = newCoordinator(2, 3);
+        IPeer[] peers = new IPeer[] { seller, buyer, coordinator };
+        for (IPeer peer : peers) {
+            ((APeer) peer).setPeers(peers);
+            ((APeer) peer).setTraderIDs(new int[] { 2 });
+        }
+
+        coordinator.offerBatch(new Product[] { Product.BOARS, Product.FISH }, new int[] { 2, 3 }, new int[] { 1, 0, 0 }, 0);
+        Thread.sleep(500);
+        Assertions.assertArrayEquals(new int[] { 1, 0, 1 }, coordinator.timestamp);
+
+        coordinator.buyBatch(new Product[] { Product.BOARS, Product.FISH, Product.SALT }, new int[] { 2, 3, 1 }, new int[] { 1, 1, 1 }, 1, 0);
+        Thread.sleep(500);
+
+        Assertions.assertArrayEquals(new boolean[] { true, true, false }, bought[0]);
+        TraderState traderState = TraderState.readTraderState();
+        Assertions.assertFalse(traderState.productAvailable(Product.BOARS, 1));
+        Assertions.assertFalse(traderState.productAvailable(Product.FISH, 1));
+        Assertions.assertEquals(12, seller.money);
+        Assertions.assertArrayEquals(new int[] { 2, 1, 2 }, seller.timestamp); // one payment for the whole batch
+    }
+
+    @Test
+    public void testBuyIfAvailable() throws RemoteException, InterruptedException {
+        Buyer buyer = new Buyer(0,3);
+        Seller seller = new Seller(1,3);
+        APeer coordinator = newCoordinator(2, 3);
+        IPeer[] peers = new IPeer[] { buyer, seller, coordinator };
+        buyer.setPeers(peers);
+        seller.setPeers(peers);
+        coordinator.setPeers(peers);
+
+        buyer.startElection();
+        Thread.sleep(1000);
+
+        // put items in stock
+        seller.initiateOffer(Product.BOARS, 5);
+        Thread.sleep(1000);
+
+        // not enough in stock, nothing is taken
+        buyer.initiateBuyIfAvailable(System.nanoTime(), Product.BOARS, 6);
+        Thread.sleep(1000);
+
+        TraderState traderState = TraderState.readTraderState();
+        Assertions.assertTrue(traderState.productAvailable(Product.BOARS, 5));
+        Assertions.assertEquals(0, seller.money);
+
+        // bought without discovering first
+        buyer.initiateBuyIfAvailable(System.nanoTime(), Product.BOARS, 3);
+        Thread.sleep(1000);
+
+        traderState = TraderState.readTraderState();
+        Assertions.assertFalse(traderState.productAvailable(Product.BOARS, 3));
+        Assertions.assertTrue(traderState.productAvailable(Product.BOARS, 2));
+        Assertions.assertEquals(9, seller.money);
+
+        Assertions.assertArrayEquals(new int[] { 4, 1, 3 }, buyer.timestamp);
+        Assertions.assertArrayEquals(new int[] { 3, 3, 3 }, seller.timestamp);
+        Assertions.assertArrayEquals(new int[] { 3, 1, 3 }, coordinator.timestamp);
+    }
+
+    @Test
+    public void testSequencerMode() throws RemoteException, InterruptedException {
+        Buyer buyer = new Buyer(0,3);
+        Seller seller = new Seller(1,3);
+        APeer coordinator = newCoordinator(2, 3);
+        coordinator.sequencerMode = true;
+        IPeer[] peers = new IPeer[] { buyer, seller, coordinator };
+        buyer.setPeers(peers);
+        seller.setPeers(peers);
+        coordinator.setPeers(peers);
+
+        buyer.startElection();
+        Thread.sleep(1000);
+
+        // put items in stock
+        seller.initiateOffer(Product.BOARS, 5);
+        Thread.sleep(1000);
+
+        buyer.pickProduct(Product.BOARS, 3);
+        buyer.initiateDiscovery(Product.BOARS, 3);
+        Thread.sleep(1000);
+
+        TraderState traderState = TraderState.readTraderState();
+        Assertions.assertFalse(traderState.productAvailable(Product.BOARS, 3));
+        Assertions.assertTrue(traderState.productAvailable(Product.BOARS, 2));
+        Assertions.assertEquals(9, seller.money);
+
+        Assertions.assertArrayEquals(new int[] { 4, 1, 3 }, buyer.timestamp);
+        Assertions.assertArrayEquals(new int[] { 3, 3, 3 }, seller.timestamp);
+        Assertions.assertArrayEquals(new int[] { 3, 1, 3 }, coordinator.timestamp);
+    }
+
+    @Test
+    public void testBatchWindow() throws RemoteException, InterruptedException {
+        Buyer buyer = new Buyer(0, 3);
+        Seller seller = new Seller(1, 3);
+        APeer coordinator = newCoordinator(2, 3);
+        IPeer[] peers = new IPeer[] { buyer, seller, coordinator };
+        for (IPeer peer : peers) {
+            ((APeer) peer).setPeers(peers);
+            ((APeer) peer).setTraderIDs(new int[] { 2 });
+            ((APeer) peer).batchWindow = 50;
+        }
+
+        // both offers are sent in one batch
+        seller.initiateOffer(Product.BOARS, 2);
+        seller.initiateOffer(Product.BOARS, 3);
+        Thread.sleep(500);
+        Assertions.assertArrayEquals(new int[] { 0, 2, 1 }, seller.timestamp);
+
+        // discovery and purchase are sent as batches as well
+        buyer.pickProduct(Product.BOARS, 4);
+        buyer.initiateDiscovery(Product.BOARS, 4);
+        Thread.sleep(500);
+
+        TraderState traderState = TraderState.readTraderState();
+        Assertions.assertFalse(traderState.productAvailable(Product.BOARS, 2));
+        Assertions.assertTrue(traderState.productAvailable(Product.BOARS, 1));
+        Assertions.assertEquals(12, seller.money);
+        Assertions.assertEquals(4, buyer.timestamp[0]); // one discovery and one purchase, both acknowledged
+    }
+
+    /**
+     * @return Peer that only trades, it ignores the acknowledgements and payments it gets.
+     */
+    private static APeer newCoordinator(int peerID, int peersAmt) throws RemoteException {
+        return new APeer(peerID, peersAmt) {
+            @Override
+            public void discoverAck(Product product, int amount, boolean available, int[] traderTimestamp) throws RemoteException {}
+
+            @Override
+            public void buyAck(Product product, int amount, boolean bought, int[] traderTimestamp, long timeInitiated) throws RemoteException {}
+
+            @Override
+            public void offerAck(int[] sellerTimestamp) throws RemoteException {}
+
+            @Override
+            public void pay(int price, int[] traderTimestamp) throws RemoteException {}
+        };
+    }
 }
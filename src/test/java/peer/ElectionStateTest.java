@@ -0,0 +1,66 @@
+package peer;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ElectionStateTest {
+
+    @Test
+    public void testStartSuppressedWhileInProgress() {
+        ElectionState state = new ElectionState(1000);
+
+        Assertions.assertEquals(1, state.start(0, 0));
+        Assertions.assertEquals(-1, state.start(0, 10));
+        Assertions.assertTrue(state.finish(1));
+        Assertions.assertEquals(2, state.start(0, 20));
+    }
+
+    @Test
+    public void testStartAfterTimeout() {
+        ElectionState state = new ElectionState(1000);
+
+        Assertions.assertEquals(1, state.start(0, 0));
+        Assertions.assertEquals(2, state.start(0, 1000));
+    }
+
+    @Test
+    public void testJoinedElectionSuppressesStart() {
+        ElectionState state = new ElectionState(1000);
+
+        Assertions.assertTrue(state.accept(1, 3, 0));
+        Assertions.assertEquals(-1, state.start(5, 10));
+    }
+
+    @Test
+    public void testConcurrentElectionsCollapse() {
+        ElectionState state = new ElectionState(1000);
+
+        Assertions.assertTrue(state.accept(1, 2, 0));
+        Assertions.assertFalse(state.accept(1, 1, 0)); // lower peer, same epoch
+        Assertions.assertTrue(state.accept(1, 4, 0)); // higher peer, same epoch
+        Assertions.assertTrue(state.accept(1, 4, 0));
+        Assertions.assertFalse(state.accept(1, 2, 0));
+    }
+
+    @Test
+    public void testStaleMessagesDiscarded() {
+        ElectionState state = new ElectionState(1000);
+
+        Assertions.assertTrue(state.accept(2, 0, 0));
+        Assertions.assertFalse(state.accept(1, 5, 0));
+        Assertions.assertFalse(state.finish(1));
+        Assertions.assertTrue(state.finish(2));
+        Assertions.assertFalse(state.accept(2, 0, 0)); // election already decided
+        Assertions.assertEquals(2, state.getEpoch());
+    }
+
+    @Test
+    public void testFinishOfNewerEpoch() {
+        ElectionState state = new ElectionState(1000);
+
+        Assertions.assertTrue(state.finish(3));
+        Assertions.assertEquals(3, state.getEpoch());
+        Assertions.assertFalse(state.accept(3, 1, 0));
+        Assertions.assertEquals(4, state.start(1, 0));
+    }
+}
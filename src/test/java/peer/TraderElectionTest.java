@@ -16,14 +16,14 @@ public class TraderElectionTest {
         peer2.setPeers(peers);
 
         int oldCoordinatorID = 0;
-        peer1.election(new int[] {});
+        peer1.startElection();
         long timeBefore = System.currentTimeMillis();
         peer1.waitForCoordinatorChangeWithTimeout(oldCoordinatorID,5000);
         peer2.waitForCoordinatorChangeWithTimeout(oldCoordinatorID,5000);
         long timeAfter = System.currentTimeMillis();
 
-        Assertions.assertEquals(1, peer1.coordinatorID);
-        Assertions.assertEquals(1, peer2.coordinatorID);
+        Assertions.assertEquals(1, peer1.getCoordinatorID());
+        Assertions.assertEquals(1, peer2.getCoordinatorID());
         Assertions.assertTrue(timeAfter - timeBefore < 1000);
     }
 
@@ -40,8 +40,8 @@ public class TraderElectionTest {
         peer1.waitForCoordinatorChangeWithTimeout(oldCoordinatorID,100);
         long timeAfter = System.currentTimeMillis();
 
-        Assertions.assertEquals(0, peer1.coordinatorID);
-        Assertions.assertEquals(0, peer2.coordinatorID);
+        Assertions.assertEquals(0, peer1.getCoordinatorID());
+        Assertions.assertEquals(0, peer2.getCoordinatorID());
         Assertions.assertTrue(timeAfter - timeBefore >= 100);
     }
 
@@ -57,18 +57,18 @@ public class TraderElectionTest {
         peer3.setPeers(peers);
         peer4.setPeers(peers);
 
-        Assertions.assertEquals(0, peer1.coordinatorID);
-        Assertions.assertEquals(0, peer2.coordinatorID);
-        Assertions.assertEquals(0, peer3.coordinatorID);
-        Assertions.assertEquals(0, peer4.coordinatorID);
+        Assertions.assertEquals(0, peer1.getCoordinatorID());
+        Assertions.assertEquals(0, peer2.getCoordinatorID());
+        Assertions.assertEquals(0, peer3.getCoordinatorID());
+        Assertions.assertEquals(0, peer4.getCoordinatorID());
 
-        peer1.election(new int[] {});
+        peer1.startElection();
         Thread.sleep(100);
 
-        Assertions.assertEquals(3, peer1.coordinatorID);
-        Assertions.assertEquals(3, peer2.coordinatorID);
-        Assertions.assertEquals(3, peer3.coordinatorID);
-        Assertions.assertEquals(3, peer4.coordinatorID);
+        Assertions.assertEquals(3, peer1.getCoordinatorID());
+        Assertions.assertEquals(3, peer2.getCoordinatorID());
+        Assertions.assertEquals(3, peer3.getCoordinatorID());
+        Assertions.assertEquals(3, peer4.getCoordinatorID());
     }
 
     @Test
@@ -83,20 +83,20 @@ public class TraderElectionTest {
         peer3.setPeers(peers);
         peer4.setPeers(peers);
 
-        Assertions.assertEquals(0, peer1.coordinatorID);
-        Assertions.assertEquals(0, peer2.coordinatorID);
-        Assertions.assertEquals(0, peer3.coordinatorID);
-        Assertions.assertEquals(0, peer4.coordinatorID);
+        Assertions.assertEquals(0, peer1.getCoordinatorID());
+        Assertions.assertEquals(0, peer2.getCoordinatorID());
+        Assertions.assertEquals(0, peer3.getCoordinatorID());
+        Assertions.assertEquals(0, peer4.getCoordinatorID());
 
-        peer1.election(new int[] {});
-        peer3.election(new int[] {});
+        peer1.startElection();
+        peer3.startElection();
 
         Thread.sleep(100);
 
-        Assertions.assertEquals(3, peer1.coordinatorID);
-        Assertions.assertEquals(3, peer2.coordinatorID);
-        Assertions.assertEquals(3, peer3.coordinatorID);
-        Assertions.assertEquals(3, peer4.coordinatorID);
+        Assertions.assertEquals(3, peer1.getCoordinatorID());
+        Assertions.assertEquals(3, peer2.getCoordinatorID());
+        Assertions.assertEquals(3, peer3.getCoordinatorID());
+        Assertions.assertEquals(3, peer4.getCoordinatorID());
     }
 
     @Test
@@ -108,13 +108,113 @@ public class TraderElectionTest {
         peer1.setPeers(peers);
         peer3.setPeers(peers);
 
-        Assertions.assertEquals(0, peer1.coordinatorID);
-        Assertions.assertEquals(0, peer3.coordinatorID);
+        Assertions.assertEquals(0, peer1.getCoordinatorID());
+        Assertions.assertEquals(0, peer3.getCoordinatorID());
 
-        peer1.election(new int[] {});
+        peer1.startElection();
         Thread.sleep(100);
 
-        Assertions.assertEquals(2, peer1.coordinatorID);
-        Assertions.assertEquals(2, peer3.coordinatorID);
+        Assertions.assertEquals(2, peer1.getCoordinatorID());
+        Assertions.assertEquals(2, peer3.getCoordinatorID());
+    }
+
+    @Test
+    public void staleInitiatorTest() throws RemoteException, InterruptedException {
+        APeer[] peers = new APeer[4];
+        for (int i = 0; i < peers.length; i++) {
+            peers[i] = new Buyer(i, 4);
+        }
+        for (APeer peer : peers) {
+            peer.setPeers(peers);
+        }
+
+        // peer 0 is down during several elections
+        peers[0].crashed = true;
+        for (int i = 0; i < 3; i++) {
+            peers[1].startElection();
+            Thread.sleep(100);
+        }
+        peers[0].crashed = false;
+        Assertions.assertEquals(0, peers[0].getCoordinatorID());
+
+        // its election is stale, the peer it reaches first answers with the current coordinator
+        peers[0].startElection();
+        Thread.sleep(100);
+        Assertions.assertEquals(3, peers[0].getCoordinatorID());
+
+        // with the current epoch, its next election is not discarded
+        peers[3].crashed = true;
+        peers[0].startElection();
+        Thread.sleep(100);
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertEquals(2, peers[i].getCoordinatorID());
+        }
+    }
+
+    @Test
+    public void bullyElectionTest() throws RemoteException, InterruptedException {
+        APeer[] peers = new APeer[4];
+        for (int i = 0; i < peers.length; i++) {
+            peers[i] = new Buyer(i, 4);
+            peers[i].bullyElection = true;
+        }
+        for (APeer peer : peers) {
+            peer.setPeers(peers);
+        }
+
+        peers[0].startElection();
+        peers[2].startElection();
+        Thread.sleep(100);
+
+        for (APeer peer : peers) {
+            Assertions.assertEquals(3, peer.getCoordinatorID());
+        }
+    }
+
+    @Test
+    public void bullyReelectionTest() throws RemoteException, InterruptedException {
+        APeer peer1 = new Buyer(0, 4);
+        APeer peer3 = new Buyer(2, 4);
+        peer1.bullyElection = true;
+        peer3.bullyElection = true;
+        APeer[] peers = {peer1, null, peer3, null};
+        peer1.setPeers(peers);
+        peer3.setPeers(peers);
+
+        peer1.startElection();
+        Thread.sleep(100);
+
+        Assertions.assertEquals(2, peer1.getCoordinatorID());
+        Assertions.assertEquals(2, peer3.getCoordinatorID());
+    }
+
+    @Test
+    public void electionStormTest() throws RemoteException, InterruptedException {
+        APeer[] peers = new APeer[8];
+        for (int i = 0; i < peers.length; i++) {
+            peers[i] = new Buyer(i, 8);
+        }
+        for (APeer peer : peers) {
+            peer.setPeers(peers);
+        }
+
+        // every peer notices the failure at the same time
+        for (APeer peer : peers) {
+            peer.startElection();
+        }
+        Thread.sleep(200);
+
+        for (APeer peer : peers) {
+            Assertions.assertEquals(7, peer.getCoordinatorID());
+        }
+        // once the election is done, the next failure starts a new one
+        for (APeer peer : peers) {
+            peer.setTraderIDs(new int[] { 0 });
+        }
+        peers[0].startElection();
+        Thread.sleep(100);
+        for (APeer peer : peers) {
+            Assertions.assertEquals(7, peer.getCoordinatorID());
+        }
     }
 }
@@ -0,0 +1,34 @@
+package peer;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import product.Product;
+
+public class TraderRoutingTest {
+
+    @Test
+    public void testHighestPeersBecomeTraders() {
+        Assertions.assertArrayEquals(new int[] { 7 }, TraderRouting.chooseTraders(new int[] { 2, 7, 5, 3 }, 1));
+        Assertions.assertArrayEquals(new int[] { 7, 5, 3 }, TraderRouting.chooseTraders(new int[] { 2, 7, 5, 3 }, 3));
+    }
+
+    @Test
+    public void testFewerPeersThanPartitions() {
+        Assertions.assertArrayEquals(new int[] { 4, 1, 4 }, TraderRouting.chooseTraders(new int[] { 1, 4, 4 }, 3));
+    }
+
+    @Test
+    public void testAtMostOnePartitionPerProduct() {
+        int[] traderIDs = TraderRouting.chooseTraders(new int[] { 0, 1, 2, 3, 4, 5 }, 10);
+
+        Assertions.assertEquals(Product.values().length, traderIDs.length);
+    }
+
+    @Test
+    public void testPartitionOf() {
+        for (Product product : Product.values()) {
+            Assertions.assertEquals(0, TraderRouting.partitionOf(product, 1));
+            Assertions.assertEquals(product.ordinal(), TraderRouting.partitionOf(product, Product.values().length));
+        }
+    }
+}
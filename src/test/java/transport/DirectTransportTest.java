@@ -0,0 +1,196 @@
+package transport;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import peer.APeer;
+import peer.Seller;
+import product.Product;
+import utils.TraderState;
+import utils.TraderStateStore;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class DirectTransportTest {
+
+    // peers keep their timers after a test, so they are crashed to stop them trading into the next test
+    private final List<APeer> startedPeers = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() {
+        TraderState.resetTraderState();
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        for (APeer peer : startedPeers) {
+            peer.crashed = true;
+        }
+        Thread.sleep(TraderStateStore.COMPACTION_PERIOD); // pending compactions are written before the reset
+    }
+
+    @Test
+    public void testLookupReturnsBoundPeer() throws RemoteException {
+        DirectTransport transport = new DirectTransport(2);
+        Seller seller = new Seller(0, 2, transport);
+        transport.bind(0, seller);
+
+        Assertions.assertSame(seller, transport.lookup(0));
+        Assertions.assertThrows(RemoteException.class, () -> transport.lookup(1));
+    }
+
+    @Test
+    public void testElectionInOneProcess() throws RemoteException, InterruptedException {
+        int n = 50;
+        DirectTransport transport = new DirectTransport(n);
+        APeer[] peers = new APeer[n];
+        for (int i = 0; i < n; i++) {
+            peers[i] = new Seller(i, n, transport);
+            peers[i].crashIfCoordinator = false;
+            transport.bind(i, peers[i]);
+        }
+        startedPeers.addAll(Arrays.asList(peers));
+        for (APeer peer : peers) {
+            peer.start();
+        }
+
+        peers[0].startElection();
+        Thread.sleep(1000);
+
+        for (APeer peer : peers) {
+            Assertions.assertEquals(n - 1, peer.getCoordinatorID());
+        }
+    }
+
+    @Test
+    public void testFailoverOnMissingHeartbeats() throws RemoteException, InterruptedException {
+        int n = 4;
+        DirectTransport transport = new DirectTransport(n);
+        APeer[] peers = new APeer[n];
+        for (int i = 0; i < n; i++) {
+            peers[i] = new Seller(i, n, transport);
+            peers[i].crashIfCoordinator = false;
+            peers[i].standbys = 1;
+            transport.bind(i, peers[i]);
+        }
+        startedPeers.addAll(Arrays.asList(peers));
+        for (APeer peer : peers) {
+            peer.start();
+        }
+        peers[0].startElection();
+        Thread.sleep(APeer.HEARTBEAT_TIMEOUT);
+        Assertions.assertEquals(n - 1, peers[0].getCoordinatorID()); // heartbeats arrive in time
+        peers[n - 1].offer(Product.FISH, 5, new int[n], 0);
+        Thread.sleep(TraderStateStore.COMPACTION_PERIOD + 200); // replicated and compacted
+
+        // no peer sends a request to the crashed coordinator, its missing heartbeats start the election
+        peers[n - 1].crashed = true;
+        TraderState.resetTraderState(); // the standby must not need the disk
+        Thread.sleep(APeer.HEARTBEAT_TIMEOUT + 3L * APeer.HEARTBEAT_PERIOD);
+
+        for (int i = 0; i < n - 1; i++) {
+            Assertions.assertEquals(n - 2, peers[i].getCoordinatorID());
+        }
+        Assertions.assertTrue(TraderState.readTraderState().productAvailable(Product.FISH, 5));
+    }
+
+    @Test
+    public void testElectionWhileOldCoordinatorTrades() throws RemoteException, InterruptedException {
+        electionWhileOldCoordinatorTrades(false);
+    }
+
+    @Test
+    public void testElectionWhileOldCoordinatorTradesInSequencerMode() throws RemoteException, InterruptedException {
+        electionWhileOldCoordinatorTrades(true); // the sequencer defers the trades until the batch is handed over
+    }
+
+    private void electionWhileOldCoordinatorTrades(boolean sequencerMode) throws RemoteException, InterruptedException {
+        int n = 4;
+        DirectTransport transport = new DirectTransport(n);
+        APeer[] peers = new APeer[n];
+        for (int i = 0; i < n; i++) {
+            peers[i] = new Seller(i, n, transport);
+            peers[i].crashIfCoordinator = false;
+            peers[i].bullyElection = true;
+            peers[i].sequencerMode = sequencerMode;
+            peers[i].setTraderIDs(new int[] { n - 2 }); // the highest peer was down during the last election
+            transport.bind(i, peers[i]);
+        }
+        startedPeers.addAll(Arrays.asList(peers));
+        for (APeer peer : peers) {
+            peer.start();
+        }
+        peers[n - 2].offer(Product.FISH, 5, new int[n], 0);
+        Thread.sleep(200);
+
+        // the old coordinator is still busy trading a large batch when the new one is announced
+        Product[] products = new Product[20000];
+        int[] amounts = new int[products.length];
+        Arrays.fill(products, Product.SALT);
+        Arrays.fill(amounts, 1);
+        peers[n - 2].offerBatch(products, amounts, new int[n], 1);
+        Thread.sleep(10);
+        peers[0].startElection();
+        while (peers[n - 1].getCoordinatorID() != n - 1) {
+            Thread.sleep(1);
+        }
+        peers[n - 1].offer(Product.BOARS, 7, new int[n], 0);
+        Thread.sleep(TraderStateStore.COMPACTION_PERIOD + 500);
+
+        for (APeer peer : peers) {
+            Assertions.assertEquals(n - 1, peer.getCoordinatorID());
+        }
+        // the whole batch is handed over, and neither coordinator overwrites the trades of the other
+        TraderState traderState = TraderState.readTraderState();
+        Assertions.assertTrue(traderState.productAvailable(Product.FISH, 5));
+        Assertions.assertTrue(traderState.productAvailable(Product.SALT, products.length));
+        Assertions.assertTrue(traderState.productAvailable(Product.BOARS, 7));
+    }
+
+    @Test
+    public void testShardedTradersRebalanceOnFailure() throws RemoteException, InterruptedException {
+        int n = 5;
+        DirectTransport transport = new DirectTransport(n);
+        APeer[] peers = new APeer[n];
+        for (int i = 0; i < n; i++) {
+            peers[i] = new Seller(i, n, transport);
+            peers[i].crashIfCoordinator = false;
+            peers[i].traders = 3;
+            transport.bind(i, peers[i]);
+        }
+        startedPeers.addAll(Arrays.asList(peers));
+        for (APeer peer : peers) {
+            peer.start();
+        }
+        peers[0].startElection();
+        Thread.sleep(1000);
+
+        // one trader per product
+        for (APeer peer : peers) {
+            Assertions.assertEquals(4, peer.getTraderID(Product.FISH));
+            Assertions.assertEquals(3, peer.getTraderID(Product.SALT));
+            Assertions.assertEquals(2, peer.getTraderID(Product.BOARS));
+        }
+        Assertions.assertThrows(RemoteException.class, () -> peers[3].offer(Product.FISH, 5, new int[n], 0));
+        peers[3].offer(Product.SALT, 5, new int[n], 0);
+        Thread.sleep(TraderStateStore.COMPACTION_PERIOD + 200);
+
+        // the partition of the crashed trader moves to the next lower peer, which recovers its stock
+        peers[3].crashed = true;
+        Thread.sleep(APeer.HEARTBEAT_TIMEOUT + 3L * APeer.HEARTBEAT_PERIOD);
+
+        for (int i = 0; i < n; i++) {
+            if (i == 3) {
+                continue;
+            }
+            Assertions.assertEquals(4, peers[i].getTraderID(Product.FISH));
+            Assertions.assertEquals(2, peers[i].getTraderID(Product.SALT));
+            Assertions.assertEquals(1, peers[i].getTraderID(Product.BOARS));
+        }
+        Assertions.assertTrue(TraderState.readTraderState(1).productAvailable(Product.SALT, 5));
+    }
+}
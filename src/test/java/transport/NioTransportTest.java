@@ -0,0 +1,93 @@
+package transport;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import peer.IPeer;
+import peer.Seller;
+import product.Product;
+
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.rmi.RemoteException;
+import java.util.Arrays;
+
+public class NioTransportTest {
+
+    private static final int BASE_PORT = 23000;
+
+    @Test
+    public void testCodecRoundTrip() throws NoSuchMethodException {
+        Method buy = IPeer.class.getMethod("buy", Product.class, int.class, int[].class, int.class, long.class);
+        Object[] args = { Product.SALT, 3, new int[] { 1, 2, 3 }, 2, 42L };
+
+        ByteBuffer frame = PeerCodec.encodeRequest(7, buy, args);
+        Assertions.assertEquals(frame.remaining() - Integer.BYTES, frame.getInt());
+        Assertions.assertEquals(7, frame.getLong());
+        Assertions.assertEquals(buy, PeerCodec.METHODS[frame.get()]);
+        Object[] decoded = PeerCodec.decodeArguments(frame, buy);
+        Assertions.assertEquals(Product.SALT, decoded[0]);
+        Assertions.assertEquals(3, decoded[1]);
+        Assertions.assertArrayEquals(new int[] { 1, 2, 3 }, (int[]) decoded[2]);
+        Assertions.assertEquals(2, decoded[3]);
+        Assertions.assertEquals(42L, decoded[4]);
+        Assertions.assertFalse(frame.hasRemaining());
+    }
+
+    @Test
+    public void testCodecBatchRoundTrip() throws NoSuchMethodException {
+        Method buyBatchAck = IPeer.class.getMethod("buyBatchAck", Product[].class, int[].class, boolean[].class, int[].class, long.class);
+        Object[] args = { new Product[] { Product.FISH, Product.BOARS }, new int[] { 1, 4 }, new boolean[] { false, true }, null, 5L };
+
+        ByteBuffer frame = PeerCodec.encodeRequest(8, buyBatchAck, args);
+        frame.getInt();
+        Assertions.assertEquals(8, frame.getLong());
+        Assertions.assertEquals(buyBatchAck, PeerCodec.METHODS[frame.get()]);
+        Object[] decoded = PeerCodec.decodeArguments(frame, buyBatchAck);
+        Assertions.assertArrayEquals(new Product[] { Product.FISH, Product.BOARS }, (Product[]) decoded[0]);
+        Assertions.assertArrayEquals(new int[] { 1, 4 }, (int[]) decoded[1]);
+        Assertions.assertArrayEquals(new boolean[] { false, true }, (boolean[]) decoded[2]);
+        Assertions.assertNull(decoded[3]);
+        Assertions.assertEquals(5L, decoded[4]);
+        Assertions.assertFalse(frame.hasRemaining());
+    }
+
+    @Test
+    public void testCallsBetweenTransports() throws RemoteException, InterruptedException {
+        NioTransport server = new NioTransport(NioTransport.HOST, BASE_PORT);
+        NioTransport client = new NioTransport(NioTransport.HOST, BASE_PORT);
+        Seller seller = new Seller(1, 2, server);
+        server.bind(1, seller);
+
+        IPeer remoteSeller = client.lookup(1);
+        Assertions.assertEquals(1, remoteSeller.getPeerID());
+
+        remoteSeller.pay(5, new int[] { 1, 0 });
+        remoteSeller.pay(4, new int[] { 2, 0 });
+        Thread.sleep(500);
+        Assertions.assertEquals(9, seller.money);
+
+        // exceptions of the peer reach the caller
+        Assertions.assertThrows(RemoteException.class, () -> remoteSeller.discover(Product.FISH, 1, new int[] { 0, 0 }, 0));
+        // peers that are not bound cannot be reached
+        Assertions.assertThrows(RemoteException.class, () -> client.lookup(0).getPeerID());
+    }
+
+    @Test
+    public void testFramesLargerThanSocketBuffer() throws RemoteException {
+        NioTransport server = new NioTransport(NioTransport.HOST, BASE_PORT + 10);
+        NioTransport client = new NioTransport(NioTransport.HOST, BASE_PORT + 10);
+        Seller seller = new Seller(1, 2, server);
+        server.bind(1, seller);
+
+        // several megabytes, written in parts by the selector thread
+        int n = 1 << 20;
+        Product[] products = new Product[n];
+        Arrays.fill(products, Product.FISH);
+        int[] amounts = new int[n];
+        Arrays.fill(amounts, 1);
+        IPeer remoteSeller = client.lookup(1);
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertTrue(remoteSeller.replicate(0, true, 1, products, amounts, new int[n]));
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class FailureDetectorTest {
+
+    @Test
+    public void testNotWatchingNeverSuspects() {
+        FailureDetector detector = new FailureDetector(100);
+
+        Assertions.assertFalse(detector.suspect(1000));
+    }
+
+    @Test
+    public void testSuspectsAfterTimeout() {
+        FailureDetector detector = new FailureDetector(100);
+        detector.watch(0);
+
+        Assertions.assertFalse(detector.suspect(100));
+        Assertions.assertTrue(detector.suspect(101));
+        Assertions.assertFalse(detector.suspect(200)); // reported only once
+    }
+
+    @Test
+    public void testHeartbeatsKeepCoordinatorAlive() {
+        FailureDetector detector = new FailureDetector(100);
+        detector.watch(0);
+
+        detector.heartbeat(80);
+        detector.heartbeat(160);
+        detector.heartbeat(120); // late heartbeat does not move the last heartbeat back
+        Assertions.assertFalse(detector.suspect(250));
+        Assertions.assertTrue(detector.suspect(261));
+
+        detector.watch(300);
+        Assertions.assertFalse(detector.suspect(350));
+    }
+}
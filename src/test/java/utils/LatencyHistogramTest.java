@@ -0,0 +1,75 @@
+package utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10000; i++) {
+            histogram.record(i);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        Assertions.assertEquals(10000, snapshot.getTotalCount());
+        Assertions.assertEquals(10000, snapshot.getMaxValue());
+        assertWithinPrecision(5000, snapshot.getValueAtPercentile(50));
+        assertWithinPrecision(9900, snapshot.getValueAtPercentile(99));
+        assertWithinPrecision(9990, snapshot.getValueAtPercentile(99.9));
+        Assertions.assertEquals(10000, snapshot.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testSnapshotResets() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(21000);
+        histogram.record(19000);
+        Assertions.assertEquals(2, histogram.snapshot().getTotalCount());
+
+        histogram.record(7);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        Assertions.assertEquals(1, snapshot.getTotalCount());
+        Assertions.assertEquals(7, snapshot.getMaxValue());
+        Assertions.assertEquals(7, snapshot.getValueAtPercentile(50));
+    }
+
+    @Test
+    public void testBucketBoundaries() {
+        for (long value = 0; value < 1_000_000; value++) {
+            int index = LatencyHistogram.bucketIndex(value);
+            long highest = LatencyHistogram.highestValueInBucket(index);
+            Assertions.assertTrue(highest >= value);
+            Assertions.assertTrue(highest - value <= value / 64);
+        }
+        Assertions.assertTrue(LatencyHistogram.highestValueInBucket(LatencyHistogram.bucketIndex(LatencyHistogram.MAX_VALUE)) >= LatencyHistogram.MAX_VALUE);
+    }
+
+    @Test
+    public void testConcurrentRecording() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 4; i++) {
+            executor.submit(() -> {
+                for (int j = 0; j < 10000; j++) {
+                    histogram.record(j);
+                }
+            });
+        }
+        executor.shutdown();
+        Assertions.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        Assertions.assertEquals(40000, snapshot.getTotalCount());
+        Assertions.assertEquals(9999, snapshot.getMaxValue());
+    }
+
+    private static void assertWithinPrecision(long expected, long actual) {
+        Assertions.assertTrue(actual >= expected && actual - expected <= expected / 64, "expected ~" + expected + " but was " + actual);
+    }
+}
@@ -0,0 +1,89 @@
+package utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import product.Product;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class LoggerTest {
+
+    @Test
+    public void testConcurrentMessagesAreWritten() throws IOException, InterruptedException {
+        String marker = "logger-test-" + System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 4; i++) {
+            executor.submit(() -> {
+                for (int j = 0; j < 500; j++) {
+                    Logger.log(marker);
+                }
+            });
+        }
+        executor.shutdown();
+        Assertions.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        Logger.flush(5000);
+
+        long lines = Files.readAllLines(Paths.get("trading_post_log.txt")).stream()
+                .filter(line -> line.endsWith(" " + marker))
+                .count();
+        Assertions.assertEquals(2000, lines);
+    }
+
+    @Test
+    public void testBinarySinkRoundTrip() throws IOException {
+        int peerID = (int) (System.nanoTime() & Integer.MAX_VALUE);
+        BinaryLogSink sink = new BinaryLogSink();
+        LogRecord record = new LogRecord();
+        record.set(LogEvent.BOUGHT, 42, peerID, 3, 5, Product.SALT, null, null);
+        sink.write(record);
+        record.set(LogEvent.PEER_DOING_ELECTION, 43, peerID, 0, 0, null, new int[] {1, 2}, null);
+        sink.write(record);
+        record.set(LogEvent.TEXT, 44, peerID, 0, 0, null, null, "text");
+        sink.write(record);
+        sink.flush();
+
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(BinaryLogSink.LOG_FILE));
+        StringBuilder decoded = new StringBuilder();
+        while (buffer.hasRemaining()) {
+            BinaryLogSink.read(buffer, record);
+            if (record.getPeerID() == peerID) {
+                decoded.append(record.getTime()).append(' ').append(record.format()).append('\n');
+            }
+        }
+        Assertions.assertEquals("42 " + Messages.getBoughtMessage(5, Product.SALT, 3, peerID) + "\n"
+                + "43 " + Messages.getPeerDoingElectionMessage(peerID, new int[] {1, 2}) + "\n"
+                + "44 text\n", decoded.toString());
+    }
+
+    @Test
+    public void testLevelAndSampling() {
+        try {
+            Logger.configure("discovery", "4");
+            int logged = 0;
+            for (int i = 0; i < 100; i++) {
+                if (Logger.isLoggable(LogEvent.DISCOVERY)) {
+                    logged++;
+                }
+            }
+            Assertions.assertEquals(25, logged);
+
+            Logger.configure("pay", "off");
+            Assertions.assertFalse(Logger.isLoggable(LogEvent.PAY));
+
+            Logger.configure("level", "info");
+            Assertions.assertFalse(Logger.isLoggable(LogEvent.BUY));
+            Assertions.assertTrue(Logger.isLoggable(LogEvent.BOUGHT));
+            Assertions.assertTrue(Logger.isLoggable(LogEvent.PEER_DOES_NOT_RESPOND));
+        } finally {
+            Logger.setLevel(LogLevel.DEBUG);
+            Logger.setSampleRate(LogCategory.DISCOVERY, 1);
+            Logger.setSampleRate(LogCategory.PAY, 1);
+        }
+    }
+}
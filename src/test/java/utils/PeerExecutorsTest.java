@@ -0,0 +1,46 @@
+package utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PeerExecutorsTest {
+
+    @Test
+    public void testSlowPeriodicTaskDoesNotOverlap() throws InterruptedException {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        AtomicInteger runs = new AtomicInteger();
+        ScheduledFuture<?> future = PeerExecutors.scheduleAtFixedRate(() -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            runs.incrementAndGet();
+            try {
+                Thread.sleep(50); // takes five periods
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+        }, 0, 10, TimeUnit.MILLISECONDS);
+
+        Thread.sleep(300);
+        future.cancel(false);
+        Assertions.assertEquals(1, maxRunning.get());
+        Assertions.assertTrue(runs.get() > 1);
+    }
+
+    @Test
+    public void testFailingPeriodicTaskIsCancelled() throws InterruptedException {
+        AtomicInteger runs = new AtomicInteger();
+        ScheduledFuture<?> future = PeerExecutors.scheduleAtFixedRate(() -> {
+            runs.incrementAndGet();
+            throw new IllegalStateException("failed");
+        }, 0, 10, TimeUnit.MILLISECONDS); // the first run can fail before the future is returned
+
+        Thread.sleep(100);
+        Assertions.assertTrue(future.isCancelled());
+        Assertions.assertEquals(1, runs.get());
+    }
+}
@@ -0,0 +1,93 @@
+package utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import product.Product;
+import utils.collections.IntArrayDeque;
+
+public class SellerQueueTest {
+
+    @Test
+    public void testRunsAndWrapAround() {
+        SellerQueue queue = new SellerQueue();
+        for (int i = 0; i < 20; i++) {
+            queue.add(i, 2);
+            queue.add(i, 1); // merged with previous run
+        }
+        Assertions.assertEquals(60, queue.size());
+        Assertions.assertEquals(20, queue.runCount());
+
+        Assertions.assertArrayEquals(new int[] {0, 3, 1, 1}, take(queue, 4));
+        for (int i = 20; i < 30; i++) {
+            queue.add(i, 1);
+        }
+        Assertions.assertArrayEquals(new int[] {1, 2, 2, 3}, take(queue, 5));
+        Assertions.assertArrayEquals(new int[] {}, take(queue, 100));
+        Assertions.assertEquals(61, queue.size());
+        Assertions.assertEquals(27, queue.runCount());
+    }
+
+    @Test
+    public void testCapacityShrinks() {
+        SellerQueue queue = new SellerQueue();
+        for (int i = 0; i < 10_000; i++) {
+            queue.add(i, 1);
+        }
+        Assertions.assertTrue(queue.capacity() >= 10_000);
+
+        take(queue, 9_999);
+        Assertions.assertTrue(queue.capacity() <= 16);
+        Assertions.assertArrayEquals(new int[] {9_999, 1}, take(queue, 1));
+    }
+
+    @Test
+    public void testAggregatesPayoutsPerSeller() {
+        SellerQueue queue = new SellerQueue();
+        queue.add(3, 2);
+        queue.add(1, 1);
+        queue.add(3, 4);
+        Assertions.assertArrayEquals(new int[] {3, 5, 1, 1}, take(queue, 6));
+        Assertions.assertEquals(1, queue.size());
+    }
+
+    // Long running soak test: the coordinator trades for millions of rounds without its heap growing.
+    @Test
+    @Tag("soak")
+    public void testSoakHeapStaysFlat() {
+        TraderState traderState = new TraderState(TraderStateFormat.emptyQueues(), 0);
+        IntArrayDeque payouts = new IntArrayDeque();
+        Runtime runtime = Runtime.getRuntime();
+
+        long baseline = 0;
+        for (int round = 0; round < 5_000_000; round++) {
+            Product product = Product.values()[round % 3];
+            traderState.putIntoStock(product, 1 + round % 5, round % 7);
+            payouts.clear();
+            traderState.takeOutOfStock(product, 1 + round % 5, payouts);
+
+            if (round == 100_000) {
+                baseline = usedHeap(runtime);
+            }
+        }
+
+        long growth = usedHeap(runtime) - baseline;
+        Assertions.assertTrue(growth < 4 * 1024 * 1024, "Heap grew by " + growth + " bytes");
+        for (Product product : Product.values()) {
+            SellerQueue queue = traderState.getSellerQueues().get(product);
+            Assertions.assertEquals(0, queue.size());
+            Assertions.assertTrue(queue.capacity() <= 16);
+        }
+    }
+
+    private static int[] take(SellerQueue queue, int amount) {
+        IntArrayDeque payouts = new IntArrayDeque();
+        queue.take(amount, payouts);
+        return payouts.toArray();
+    }
+
+    private static long usedHeap(Runtime runtime) {
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,57 @@
+package utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class SequencerTest {
+
+    private static class Entry {
+        int publisher;
+        int value;
+    }
+
+    @Test
+    public void testOrderPerPublisher() throws InterruptedException {
+        int publishers = 4;
+        int values = 10000;
+        int[] lastValues = new int[publishers];
+        CountDownLatch done = new CountDownLatch(publishers * values);
+        List<String> errors = new ArrayList<>();
+
+        // small ring, so publishers have to wait for the handler
+        Sequencer<Entry> sequencer = new Sequencer<>(16, Entry::new, entry -> {
+            if (entry.value != lastValues[entry.publisher] + 1) {
+                errors.add("publisher " + entry.publisher + " value " + entry.value);
+            }
+            lastValues[entry.publisher] = entry.value;
+            done.countDown();
+        }, "test-sequencer");
+
+        for (int p = 0; p < publishers; p++) {
+            int publisher = p;
+            new Thread(() -> {
+                for (int v = 1; v <= values; v++) {
+                    int value = v;
+                    sequencer.publish(entry -> {
+                        entry.publisher = publisher;
+                        entry.value = value;
+                    });
+                }
+            }).start();
+        }
+
+        Assertions.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(List.of(), errors);
+        Assertions.assertArrayEquals(new int[] { values, values, values, values }, lastValues);
+    }
+
+    @Test
+    public void testRejectsCapacity() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new Sequencer<>(12, Object::new, entry -> {}, "test-sequencer"));
+    }
+}
@@ -0,0 +1,41 @@
+package utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import utils.collections.IntArrayDeque;
+
+public class SettlementLedgerTest {
+
+    @Test
+    public void testCreditsAggregatePerSeller() {
+        SettlementLedger ledger = new SettlementLedger();
+        Assertions.assertTrue(ledger.isSettled());
+
+        Assertions.assertTrue(ledger.credit(3, 6));  // first credit schedules a settlement
+        Assertions.assertFalse(ledger.credit(1, 2));
+        Assertions.assertFalse(ledger.credit(3, 4));
+        Assertions.assertFalse(ledger.credit(20, 1)); // grows past the initial capacity
+        Assertions.assertEquals(10, ledger.balance(3));
+
+        IntArrayDeque payments = new IntArrayDeque();
+        ledger.settle(payments);
+        Assertions.assertArrayEquals(new int[] { 3, 10, 1, 2, 20, 1 }, payments.toArray());
+        Assertions.assertTrue(ledger.isSettled());
+        Assertions.assertEquals(0, ledger.balance(3));
+    }
+
+    @Test
+    public void testCreditAfterSettlement() {
+        SettlementLedger ledger = new SettlementLedger();
+        ledger.credit(0, 5);
+        ledger.settle(new IntArrayDeque());
+
+        Assertions.assertFalse(ledger.credit(0, 0)); // nothing owed
+        Assertions.assertTrue(ledger.isSettled());
+        Assertions.assertTrue(ledger.credit(0, 5));
+
+        IntArrayDeque payments = new IntArrayDeque();
+        ledger.settle(payments);
+        Assertions.assertArrayEquals(new int[] { 0, 5 }, payments.toArray());
+    }
+}
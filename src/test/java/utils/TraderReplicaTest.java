@@ -0,0 +1,45 @@
+package utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import product.Product;
+
+public class TraderReplicaTest {
+
+    @Test
+    public void testNeedsResetFirst() {
+        TraderReplica replica = new TraderReplica(3);
+
+        Assertions.assertFalse(replica.isInitialized());
+        Assertions.assertFalse(replica.apply(false, 1, new Product[] { Product.FISH }, new int[] { 1 }, new int[] { 0 }));
+        Assertions.assertTrue(replica.apply(true, 0, new Product[0], new int[0], new int[0]));
+        Assertions.assertTrue(replica.isInitialized());
+        Assertions.assertEquals(3, replica.getPrimaryID());
+    }
+
+    @Test
+    public void testAppliesMutationsInOrder() {
+        TraderReplica replica = new TraderReplica(3);
+        replica.apply(true, 5, new Product[] { Product.SALT }, new int[] { 2 }, new int[] { 1 });
+
+        Assertions.assertTrue(replica.apply(false, 7, new Product[] { Product.SALT, Product.SALT }, new int[] { 3, 4 }, new int[] { 2, -1 }));
+        TraderState traderState = replica.getTraderState();
+        Assertions.assertEquals(7, traderState.getSequence());
+        Assertions.assertArrayEquals(new int[] {2, 1}, TraderStateTest.takeOutOfStock(traderState, Product.SALT, 1));
+    }
+
+    @Test
+    public void testSkipsKnownAndRejectsMissingMutations() {
+        TraderReplica replica = new TraderReplica(3);
+        replica.apply(true, 2, new Product[] { Product.BOARS }, new int[] { 2 }, new int[] { 1 });
+
+        // mutation 2 is already part of the state
+        Assertions.assertTrue(replica.apply(false, 3, new Product[] { Product.BOARS, Product.BOARS }, new int[] { 2, 1 }, new int[] { 1, 4 }));
+        Assertions.assertTrue(replica.getTraderState().productAvailable(Product.BOARS, 3));
+        Assertions.assertFalse(replica.getTraderState().productAvailable(Product.BOARS, 4));
+
+        // mutation 4 is missing
+        Assertions.assertFalse(replica.apply(false, 5, new Product[] { Product.BOARS }, new int[] { 1 }, new int[] { 2 }));
+        Assertions.assertEquals(3, replica.getTraderState().getSequence());
+    }
+}
@@ -0,0 +1,59 @@
+package utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import product.Product;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+public class TraderStateFormatTest {
+
+    @Test
+    public void testConvertTextToBinaryAndBack() throws IOException {
+        Path text = Files.createTempFile("trader_state", ".txt");
+        Path binary = Files.createTempFile("trader_state", ".bin");
+        Path convertedText = Files.createTempFile("trader_state", ".txt");
+        Files.writeString(text, "SEQ:7\nSALT:1,1,3,\nFISH:3x3,\nBOARS:3x2,1,\n");
+
+        TraderStateFormat.main(new String[] { "to-binary", text.toString(), binary.toString() });
+        TraderState traderState = TraderStateFormat.readBinary(binary);
+        Assertions.assertEquals(7, traderState.getSequence());
+        Assertions.assertTrue(traderState.productAvailable(Product.FISH, 3));
+        Assertions.assertFalse(traderState.productAvailable(Product.FISH, 4));
+
+        TraderStateFormat.main(new String[] { "to-text", binary.toString(), convertedText.toString() });
+        traderState = TraderStateFormat.readText(convertedText);
+        Assertions.assertEquals(7, traderState.getSequence());
+        Assertions.assertEquals("SEQ:7", Files.readAllLines(convertedText).get(0));
+        Assertions.assertTrue(Files.readAllLines(convertedText).contains("SALT:1x2,3x1,"));
+        Assertions.assertArrayEquals(new int[] {1, 2, 3, 1}, TraderStateTest.takeOutOfStock(traderState, Product.SALT, 3));
+        Assertions.assertArrayEquals(new int[] {3, 2, 1, 1}, TraderStateTest.takeOutOfStock(traderState, Product.BOARS, 3));
+    }
+
+    @Test
+    public void testRejectsForeignFile() throws IOException {
+        Path text = Files.createTempFile("trader_state", ".txt");
+        Files.writeString(text, "SEQ:0\nFISH:3,3,3,\n");
+        Assertions.assertThrows(IOException.class, () -> TraderStateFormat.readBinary(text));
+    }
+
+    @Test
+    public void testRejectsCorruptFile() throws IOException {
+        Path text = Files.createTempFile("trader_state", ".txt");
+        Path binary = Files.createTempFile("trader_state", ".bin");
+        Files.writeString(text, "SEQ:1\nFISH:3x2,\n");
+        TraderStateFormat.writeBinary(TraderStateFormat.readText(text), binary);
+        byte[] bytes = Files.readAllBytes(binary);
+
+        Files.write(binary, Arrays.copyOf(bytes, bytes.length - 4)); // last run cut off
+        Assertions.assertThrows(IOException.class, () -> TraderStateFormat.readBinary(binary));
+
+        ByteBuffer.wrap(bytes).putInt(20, Product.values().length); // ordinal of the first product
+        Files.write(binary, bytes);
+        Assertions.assertThrows(IOException.class, () -> TraderStateFormat.readBinary(binary));
+    }
+}
@@ -0,0 +1,212 @@
+package utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import product.Product;
+import utils.collections.IntArrayDeque;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class TraderStateStoreTest {
+
+    @BeforeEach
+    public void setUp() {
+        TraderState.resetTraderState();
+    }
+
+    @Test
+    public void testCloseFlushesState() {
+        TraderStateStore store = TraderStateStore.open();
+        store.putIntoStock(Product.FISH, 3, 0);
+        store.putIntoStock(Product.SALT, 2, 1);
+        IntArrayDeque payouts = new IntArrayDeque();
+        Assertions.assertTrue(store.takeOutOfStock(Product.FISH, 2, payouts));
+        Assertions.assertArrayEquals(new int[] {0, 2}, payouts.toArray());
+        store.close();
+
+        TraderState traderState = TraderState.readTraderState();
+        Assertions.assertTrue(traderState.productAvailable(Product.FISH, 1));
+        Assertions.assertFalse(traderState.productAvailable(Product.FISH, 2));
+        Assertions.assertTrue(traderState.productAvailable(Product.SALT, 2));
+    }
+
+    @Test
+    public void testRecoverFromLog() {
+        TraderStateStore store = TraderStateStore.open();
+        store.putIntoStock(Product.BOARS, 4, 2);
+        store.putIntoStock(Product.BOARS, 1, 3);
+        IntArrayDeque payouts = new IntArrayDeque();
+        Assertions.assertTrue(store.takeOutOfStock(Product.BOARS, 2, payouts));
+        Assertions.assertArrayEquals(new int[] {2, 2}, payouts.toArray());
+
+        // snapshot is still empty, state is recovered from the log tail
+        TraderState traderState = TraderState.readTraderState();
+        Assertions.assertTrue(traderState.productAvailable(Product.BOARS, 3));
+        Assertions.assertFalse(traderState.productAvailable(Product.BOARS, 4));
+        Assertions.assertArrayEquals(new int[] {2, 2, 3, 1}, TraderStateTest.takeOutOfStock(traderState, Product.BOARS, 3));
+        store.close();
+    }
+
+    @Test
+    public void testPayoutListener() {
+        TraderStateStore store = TraderStateStore.open();
+        store.putIntoStock(Product.SALT, 2, 4);
+        store.putIntoStock(Product.SALT, 3, 5);
+        IntArrayDeque payouts = new IntArrayDeque();
+        TraderStateStore.PayoutListener listener = (product, sellerID, units) -> {
+            Assertions.assertEquals(Product.SALT, product);
+            payouts.addLast(sellerID);
+            payouts.addLast(units);
+        };
+
+        Assertions.assertTrue(store.takeOutOfStock(Product.SALT, 4, listener));
+        Assertions.assertFalse(store.takeOutOfStock(Product.SALT, 2, listener));
+        Assertions.assertArrayEquals(new int[] {4, 2, 5, 2}, payouts.toArray());
+        store.close();
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        TraderStateStore store = TraderStateStore.open();
+        store.putIntoStock(Product.FISH, 2, 1);
+        store.compact();
+        Assertions.assertEquals(0, Files.size(TraderLog.FILE_PATH));
+
+        store.putIntoStock(Product.FISH, 1, 2);
+        Assertions.assertTrue(Files.size(TraderLog.FILE_PATH) > 0);
+
+        // records already contained in the snapshot are not replayed twice
+        TraderState traderState = TraderState.readTraderState();
+        Assertions.assertTrue(traderState.productAvailable(Product.FISH, 3));
+        Assertions.assertFalse(traderState.productAvailable(Product.FISH, 4));
+        store.close();
+    }
+
+    @Test
+    public void testConfinedStoreCompactsOnOwner() throws Exception {
+        ExecutorService owner = Executors.newSingleThreadExecutor();
+        TraderStateStore store = owner.submit(() -> {
+            TraderStateStore confined = TraderStateStore.open();
+            confined.confineTo(owner);
+            confined.putIntoStock(Product.FISH, 2, 1);
+            return confined;
+        }).get();
+
+        // the state is copied on the owner thread and written on another one
+        store.compact();
+        Thread.sleep(200);
+        Assertions.assertEquals(0, Files.size(TraderLog.FILE_PATH));
+        Assertions.assertTrue(TraderLog.compactingFilePaths(0).isEmpty());
+
+        owner.submit(() -> {
+            store.putIntoStock(Product.FISH, 1, 2);
+            store.close();
+        }).get();
+        owner.shutdown();
+        Assertions.assertTrue(TraderLog.compactingFilePaths(0).isEmpty());
+        TraderState traderState = TraderState.readTraderState();
+        Assertions.assertTrue(traderState.productAvailable(Product.FISH, 3));
+        Assertions.assertFalse(traderState.productAvailable(Product.FISH, 4));
+    }
+
+    @Test
+    public void testFailedSnapshotKeepsLog() throws IOException {
+        TraderStateStore store = TraderStateStore.open();
+        store.putIntoStock(Product.FISH, 2, 1);
+
+        // a directory in the way of the temporary snapshot file makes every snapshot fail
+        Path tempPath = Paths.get(TraderState.FILE_PATH + ".tmp");
+        Files.createDirectory(tempPath);
+        try {
+            store.compact();
+            store.putIntoStock(Product.FISH, 1, 2);
+            store.compact(); // adds a segment next to the one kept from the failed compaction
+            Assertions.assertEquals(2, TraderLog.compactingFilePaths(0).size());
+            Assertions.assertThrows(UncheckedIOException.class, TraderStateStore::open);
+
+            TraderState traderState = TraderState.readTraderState();
+            Assertions.assertTrue(traderState.productAvailable(Product.FISH, 3));
+        } finally {
+            Files.delete(tempPath);
+        }
+
+        store.close();
+        Assertions.assertTrue(TraderLog.compactingFilePaths(0).isEmpty());
+        Assertions.assertTrue(TraderState.readTraderState().productAvailable(Product.FISH, 3));
+    }
+
+    @Test
+    public void testLaggingReplicaKeepsLog() {
+        TraderStateStore store = TraderStateStore.open();
+        store.putIntoStock(Product.FISH, 3, 0);
+        ReplicationLog.Batch snapshot = store.snapshot();
+        TraderReplica replica = new TraderReplica(7);
+        Assertions.assertTrue(replica.apply(true, snapshot.getSequence(), snapshot.getProducts(), snapshot.getAmounts(), snapshot.getSellerIDs()));
+        store.close();
+
+        // the coordinator logged one more offer before it crashed, but never streamed it
+        TraderLog log = TraderLog.open(0);
+        log.appendOffer(snapshot.getSequence() + 1, Product.FISH, 2, 1);
+        log.close();
+
+        TraderStateStore standby = TraderStateStore.open(replica);
+        Assertions.assertTrue(standby.productAvailable(Product.FISH, 5));
+        standby.close();
+        Assertions.assertTrue(TraderState.readTraderState().productAvailable(Product.FISH, 5));
+    }
+
+    @Test
+    public void testTornRecordIgnored() throws IOException {
+        TraderStateStore store = TraderStateStore.open();
+        store.putIntoStock(Product.SALT, 2, 1);
+        store.putIntoStock(Product.SALT, 3, 2);
+
+        // simulate crash in the middle of the last append
+        byte[] log = Files.readAllBytes(TraderLog.FILE_PATH);
+        Files.write(TraderLog.FILE_PATH, Arrays.copyOf(log, log.length - 5));
+
+        TraderState traderState = TraderState.readTraderState();
+        Assertions.assertTrue(traderState.productAvailable(Product.SALT, 2));
+        Assertions.assertFalse(traderState.productAvailable(Product.SALT, 3));
+        store.close();
+    }
+
+    @Test
+    public void testReplicaTakesOverWithoutDisk() {
+        TraderStateStore store = TraderStateStore.open();
+        int[] notified = new int[1];
+        store.startReplication(() -> notified[0]++);
+        store.putIntoStock(Product.FISH, 3, 0);
+
+        TraderReplica replica = new TraderReplica(7);
+        ReplicationLog.Batch snapshot = store.snapshot();
+        Assertions.assertTrue(replica.apply(true, snapshot.getSequence(), snapshot.getProducts(), snapshot.getAmounts(), snapshot.getSellerIDs()));
+
+        store.putIntoStock(Product.FISH, 2, 1);
+        Assertions.assertTrue(store.takeOutOfStock(Product.FISH, 4, new IntArrayDeque()));
+        Assertions.assertEquals(1, notified[0]); // only the first mutation of a batch notifies
+
+        // the batch overlaps with the snapshot, the first offer is skipped
+        ReplicationLog.Batch batch = store.drainReplication();
+        Assertions.assertArrayEquals(new int[] {0, 1, -1}, batch.getSellerIDs());
+        Assertions.assertTrue(replica.apply(false, batch.getSequence(), batch.getProducts(), batch.getAmounts(), batch.getSellerIDs()));
+        Assertions.assertNull(store.drainReplication());
+        store.close();
+
+        TraderState.resetTraderState();
+        TraderStateStore standby = TraderStateStore.open(replica);
+        IntArrayDeque payouts = new IntArrayDeque();
+        Assertions.assertFalse(standby.productAvailable(Product.FISH, 2));
+        Assertions.assertTrue(standby.takeOutOfStock(Product.FISH, 1, payouts));
+        Assertions.assertArrayEquals(new int[] {1, 1}, payouts.toArray());
+        standby.close();
+    }
+}
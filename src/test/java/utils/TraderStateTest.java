@@ -4,8 +4,7 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import product.Product;
-
-import java.util.List;
+import utils.collections.IntArrayDeque;
 
 public class TraderStateTest {
 
@@ -30,13 +29,20 @@ public class TraderStateTest {
         Assertions.assertFalse(traderState.productAvailable(Product.FISH, 7));
         Assertions.assertFalse(traderState.productAvailable(Product.BOARS, 7));
 
-        Assertions.assertEquals(List.of(0,0), traderState.takeOutOfStock(Product.FISH, 2));
-        Assertions.assertEquals(List.of(0,1), traderState.takeOutOfStock(Product.FISH, 2));
-        Assertions.assertEquals(List.of(1), traderState.takeOutOfStock(Product.FISH, 1));
-        Assertions.assertEquals(List.of(), traderState.takeOutOfStock(Product.FISH, 2));
-        Assertions.assertEquals(List.of(1), traderState.takeOutOfStock(Product.FISH, 1));
+        Assertions.assertArrayEquals(new int[] {0,2}, takeOutOfStock(traderState, Product.FISH, 2));
+        Assertions.assertArrayEquals(new int[] {0,1,1,1}, takeOutOfStock(traderState, Product.FISH, 2));
+        Assertions.assertArrayEquals(new int[] {1,1}, takeOutOfStock(traderState, Product.FISH, 1));
+        Assertions.assertArrayEquals(new int[] {}, takeOutOfStock(traderState, Product.FISH, 2));
+        Assertions.assertArrayEquals(new int[] {1,1}, takeOutOfStock(traderState, Product.FISH, 1));
 
         Assertions.assertFalse(traderState.productAvailable(Product.FISH, 1));
         Assertions.assertTrue(traderState.productAvailable(Product.BOARS, 6));
     }
+
+    // returns the (seller ID, units) pairs of a take
+    static int[] takeOutOfStock(TraderState traderState, Product product, int amount) {
+        IntArrayDeque payouts = new IntArrayDeque();
+        traderState.takeOutOfStock(product, amount, payouts);
+        return payouts.toArray();
+    }
 }
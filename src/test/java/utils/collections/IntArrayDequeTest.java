@@ -0,0 +1,37 @@
+package utils.collections;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class IntArrayDequeTest {
+
+    @Test
+    public void testFifoOrder() {
+        IntArrayDeque deque = new IntArrayDeque();
+        for (int i = 0; i < 100; i++) {
+            deque.addLast(i);
+        }
+        for (int i = 0; i < 90; i++) {
+            Assertions.assertEquals(i, deque.removeFirst());
+        }
+        deque.set(0, 42);
+        Assertions.assertEquals(42, deque.get(0));
+        Assertions.assertEquals(99, deque.get(9));
+        Assertions.assertEquals(10, deque.size());
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> deque.get(10));
+    }
+
+    @Test
+    public void testShrinksAfterRemoval() {
+        IntArrayDeque deque = new IntArrayDeque();
+        for (int i = 0; i < 1000; i++) {
+            deque.addLast(i);
+        }
+        Assertions.assertEquals(1024, deque.capacity());
+        while (deque.size() > 1) {
+            deque.removeFirst();
+        }
+        Assertions.assertEquals(8, deque.capacity());
+        Assertions.assertArrayEquals(new int[] {999}, deque.toArray());
+    }
+}